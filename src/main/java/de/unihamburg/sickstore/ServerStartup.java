@@ -20,6 +20,8 @@ public class ServerStartup {
         Map<String, Object> config = (Map<String, Object>) yaml.load(ios);
 
         SickStoreServer server = (SickStoreServer) InstanceFactory.newInstanceFromConfig(config);
+        // e.g. to write a snapshot of the store on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown, "SickStore-shutdown"));
         server.start();
     }
 }
@@ -0,0 +1,88 @@
+package de.unihamburg.sickstore.backend;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * The timestamps of the reads that are in progress, so that pruning never drops a
+ * version that one of them may still return. Every thread publishes the timestamp
+ * of its current read in a slot of its own, so reads never contend. A store shares
+ * one instance among all of its tables; the slots of threads that have terminated
+ * are dropped by the next {@link #lowWaterMark(long)}.
+ */
+final class InFlightReads {
+
+    private static final long IDLE = Long.MAX_VALUE;
+
+    private static final class Slot {
+        /** the owning thread, which is not kept alive by its slot */
+        final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+        volatile long timestamp = IDLE;
+        /** the number of nested reads of the owning thread */
+        int depth;
+
+        boolean isOrphaned() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+
+    /** the slots of all live threads that have read so far */
+    private volatile Slot[] slots = new Slot[0];
+
+    private final ThreadLocal<Slot> slot = ThreadLocal.withInitial(this::newSlot);
+
+    private synchronized Slot newSlot() {
+        Slot slot = new Slot();
+        Slot[] slots = Arrays.copyOf(this.slots, this.slots.length + 1);
+        slots[slots.length - 1] = slot;
+        this.slots = slots;
+        return slot;
+    }
+
+    /**
+     * Registers a read of the calling thread at the given timestamp, which has to
+     * be ended by {@link #exit()}.
+     */
+    void enter(long timestamp) {
+        Slot slot = this.slot.get();
+        if (slot.depth++ == 0 || timestamp < slot.timestamp) {
+            slot.timestamp = timestamp;
+        }
+    }
+
+    void exit() {
+        Slot slot = this.slot.get();
+        if (--slot.depth == 0) {
+            slot.timestamp = IDLE;
+        }
+    }
+
+    /**
+     * @param timestamp the timestamp to prune at
+     * @return the given timestamp or the timestamp of the oldest read in progress,
+     * if that is older
+     */
+    long lowWaterMark(long timestamp) {
+        boolean orphans = false;
+        for (Slot slot : slots) {
+            timestamp = Math.min(timestamp, slot.timestamp);
+            orphans |= slot.timestamp == IDLE && slot.isOrphaned();
+        }
+        if (orphans) {
+            dropOrphans();
+        }
+        return timestamp;
+    }
+
+    private synchronized void dropOrphans() {
+        this.slots = Arrays.stream(slots).filter(slot -> !slot.isOrphaned()).toArray(Slot[]::new);
+    }
+
+    /**
+     * @return the number of threads that currently have a slot
+     */
+    int size() {
+        return slots.length;
+    }
+}
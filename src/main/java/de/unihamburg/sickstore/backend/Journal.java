@@ -0,0 +1,405 @@
+package de.unihamburg.sickstore.backend;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.unihamburg.sickstore.backend.anomaly.staleness.StalenessMap;
+import de.unihamburg.sickstore.database.Node;
+import de.unihamburg.sickstore.kryo.KryoMessageRegistrar;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of all writes to the store. Records are buffered in memory and
+ * written to disk by a single thread, which commits all records buffered since the
+ * last commit at once (group commit) and forces them to disk. Writes that ask for
+ * journaling wait for {@link #sync()} before they are acknowledged. Appending threads
+ * encode their records themselves, only copying them into the buffer is serialized.
+ *
+ * Every record is prefixed with its length and checksum, so that a record that has
+ * only been written partially (e.g. on a crash) ends the journal on replay.
+ */
+public class Journal {
+
+    private static final Logger log = LoggerFactory.getLogger("sickstore");
+
+    private static final byte WRITE = 0;
+    private static final byte BULK_LOAD = 1;
+    private static final byte CHECKPOINT = 2;
+    private static final byte ROLLBACK = 3;
+
+    private final Path file;
+    private final FileChannel channel;
+    /** interval in ms in which the journal is committed, 0 commits as soon as possible */
+    private final long commitInterval;
+    private final ScheduledExecutorService writer;
+    /** the nodes the visibility is journaled for */
+    private volatile Collection<Node> nodes = Collections.emptyList();
+
+    /** decodes records on replay */
+    private final Kryo kryo = new Kryo();
+    private final CRC32 checksum = new CRC32();
+    /** encodes the records of the appending thread, outside of the lock */
+    private final ThreadLocal<Encoder> encoder = ThreadLocal.withInitial(Encoder::new);
+
+    private final Object lock = new Object();
+    /** records that have been appended since the last commit */
+    private Output buffer = new Output(64 * 1024, -1);
+    /** buffer of the commit in progress, only accessed by the writer */
+    private Output committing = new Output(64 * 1024, -1);
+    /** completed as soon as all records appended so far are on disk */
+    private CompletableFuture<Void> pending;
+    private boolean commitScheduled = false;
+
+    /**
+     * Encodes a record and its checksum, owned by a single appending thread.
+     */
+    private static final class Encoder {
+        final Kryo kryo = new Kryo();
+        final CRC32 checksum = new CRC32();
+        final Output record = new Output(1024, -1);
+
+        Encoder() {
+            KryoMessageRegistrar.register(kryo);
+        }
+
+        /**
+         * @return the checksum of the current record
+         */
+        int checksum() {
+            checksum.reset();
+            checksum.update(record.getBuffer(), 0, record.position());
+            return (int) checksum.getValue();
+        }
+    }
+
+    public static Journal newInstanceFromConfig(Map<String, Object> config) {
+        String path = (String) config.get("path");
+        if (path == null) {
+            throw new RuntimeException("Missing journal path");
+        }
+        int commitInterval = (int) config.getOrDefault("commitInterval", 100);
+
+        try {
+            return new Journal(Paths.get(path), commitInterval);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open journal " + path, e);
+        }
+    }
+
+    /**
+     * @param file
+     * @param commitInterval interval in ms in which the journal is committed, 0 commits
+     *                       as soon as possible
+     */
+    public Journal(Path file, long commitInterval) throws IOException {
+        this.file = file;
+        this.commitInterval = commitInterval;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.channel.position(channel.size());
+        KryoMessageRegistrar.register(kryo);
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("SickStore-journal")
+                .setDaemon(true)
+                .build());
+        if (commitInterval > 0) {
+            writer.scheduleWithFixedDelay(this::commit, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Appends a write of the given version, which has been written under its key.
+     */
+    public void append(String table, Version version) {
+        append(WRITE, table, version);
+    }
+
+    /**
+     * Appends a version of a bulk load, which is only stored if its key does not
+     * exist on replay.
+     */
+    public void appendBulkLoad(String table, Version version) {
+        append(BULK_LOAD, table, version);
+    }
+
+    /**
+     * Appends a checkpoint of the store or a rollback to the last checkpoint.
+     */
+    public void appendCheckpoint(boolean rollback) {
+        Encoder encoder = this.encoder.get();
+        Output record = encoder.record;
+        record.clear();
+        record.writeByte(rollback ? ROLLBACK : CHECKPOINT);
+        appendRecord(encoder);
+    }
+
+    private void append(byte type, String table, Version version) {
+        Encoder encoder = this.encoder.get();
+        Output record = encoder.record;
+        record.clear();
+        record.writeByte(type);
+        record.writeString(table);
+        record.writeString(version.getKey());
+        record.writeVarLong(version.writtenAtOrUnset() + 1, true);
+        Node writtenBy = version.getWrittenBy();
+        record.writeString(writtenBy == null ? null : writtenBy.getName());
+        writeVisibility(record, version.getVisibility());
+        encoder.kryo.writeObject(record, version);
+        appendRecord(encoder);
+    }
+
+    /**
+     * Frames the encoded record and buffers it; only the copy into the buffer
+     * holds the lock.
+     */
+    private void appendRecord(Encoder encoder) {
+        Output record = encoder.record;
+        int checksum = encoder.checksum();
+        synchronized (lock) {
+            buffer.writeInt(record.position());
+            buffer.writeInt(checksum);
+            buffer.writeBytes(record.getBuffer(), 0, record.position());
+            scheduleCommit();
+        }
+    }
+
+    private void writeVisibility(Output record, StalenessMap visibility) {
+        if (visibility == null) {
+            record.writeVarInt(0, true);
+            return;
+        }
+        int size = 0;
+        for (Node node : nodes) {
+            if (visibility.containsKey(node)) {
+                size++;
+            }
+        }
+        record.writeVarInt(size + 1, true);
+        for (Node node : nodes) {
+            Long staleness = visibility.get(node);
+            if (staleness != null) {
+                record.writeString(node.getName());
+                record.writeVarLong(staleness, false);
+            }
+        }
+    }
+
+    /**
+     * @return a future that is completed as soon as all records that have been appended
+     * so far are on disk
+     */
+    public CompletableFuture<Void> sync() {
+        synchronized (lock) {
+            if (pending == null) {
+                pending = new CompletableFuture<>();
+            }
+            scheduleCommit();
+            return pending;
+        }
+    }
+
+    private void scheduleCommit() {
+        if (commitInterval > 0 || commitScheduled) {
+            return;
+        }
+        try {
+            writer.execute(this::commit);
+            commitScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // the journal has been closed, the final commit picks up the buffered records
+        }
+    }
+
+    /**
+     * Writes all records that have been appended since the last commit and forces them
+     * to disk. Must only be called by the writer.
+     */
+    private void commit() {
+        Output batch;
+        CompletableFuture<Void> committed;
+        synchronized (lock) {
+            commitScheduled = false;
+            batch = buffer;
+            buffer = committing;
+            committing = batch;
+            committed = pending;
+            pending = null;
+        }
+
+        try {
+            if (batch.position() > 0) {
+                ByteBuffer bytes = ByteBuffer.wrap(batch.getBuffer(), 0, batch.position());
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(false);
+            }
+            if (committed != null) {
+                committed.complete(null);
+            }
+        } catch (IOException e) {
+            log.error("Could not commit journal " + file, e);
+            if (committed != null) {
+                committed.completeExceptionally(e);
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * Replays all complete records of the journal into the given store and cuts off a
+     * partially written record at its end. Must be called before anything is appended.
+     *
+     * @param store
+     * @param nodes the nodes the visibility is restored (matched by name) and journaled for
+     * @return the number of replayed records
+     */
+    public int replay(StorageEngine store, Collection<Node> nodes) throws IOException {
+        this.nodes = nodes;
+        Map<String, Node> nodesByName = new HashMap<>();
+        for (Node node : nodes) {
+            nodesByName.put(node.getName(), node);
+        }
+
+        int records = 0;
+        long valid = 0;
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        try {
+            while (true) {
+                int length = in.readInt();
+                int expectedChecksum = in.readInt();
+                if (length < 0 || length > channel.size() - valid - 8) {
+                    // a torn length, the record cannot be complete
+                    log.warn("Journal {} has a partial record at offset {}", file, valid);
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+
+                checksum.reset();
+                checksum.update(bytes, 0, length);
+                if ((int) checksum.getValue() != expectedChecksum) {
+                    log.warn("Journal {} has a corrupt record at offset {}", file, valid);
+                    break;
+                }
+                replay(store, new Input(bytes), nodesByName);
+                valid += 8 + length;
+                records++;
+            }
+        } catch (EOFException e) {
+            // end of the journal
+        }
+
+        if (valid < channel.size()) {
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+        return records;
+    }
+
+    private void replay(StorageEngine store, Input input, Map<String, Node> nodesByName) {
+        byte type = input.readByte();
+        if (type == CHECKPOINT) {
+            store.checkpoint();
+            return;
+        } else if (type == ROLLBACK) {
+            store.rollback();
+            return;
+        }
+
+        String table = input.readString();
+        String key = input.readString();
+        long writtenAt = input.readVarLong(true) - 1;
+        String writtenBy = input.readString();
+
+        StalenessMap visibility = null;
+        int size = input.readVarInt(true) - 1;
+        if (size >= 0) {
+            visibility = new StalenessMap();
+            for (int i = 0; i < size; i++) {
+                Node node = nodesByName.get(input.readString());
+                long staleness = input.readVarLong(false);
+                if (node != null) {
+                    visibility.put(node, staleness);
+                }
+            }
+        }
+
+        Version version = kryo.readObject(input, Version.class);
+        version.setKey(key);
+        version.setWrittenBy(writtenBy == null ? null : nodesByName.get(writtenBy));
+        version.setVisibility(visibility);
+        version.setWrittenAt(writtenAt);
+        if (type == BULK_LOAD) {
+            store.bulkLoad(table, Collections.singletonList(version), true);
+        } else {
+            store.insertOrUpdate(table, key, version);
+        }
+    }
+
+    /**
+     * Drops all records, e.g. because the store has been written to a snapshot. Writes
+     * must not happen concurrently.
+     */
+    public void reset() throws IOException {
+        runOnWriter(() -> {
+            commit();
+            channel.truncate(0);
+            channel.force(true);
+            return null;
+        });
+    }
+
+    /**
+     * Commits all outstanding records and closes the journal.
+     */
+    public void close() throws IOException {
+        runOnWriter(() -> {
+            commit();
+            return null;
+        });
+        writer.shutdown();
+        channel.close();
+    }
+
+    private void runOnWriter(Callable<Void> task) throws IOException {
+        try {
+            writer.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
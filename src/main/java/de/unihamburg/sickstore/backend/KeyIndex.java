@@ -0,0 +1,51 @@
+package de.unihamburg.sickstore.backend;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The version chains of the keys of a {@link Table}, which serves both point
+ * operations and scans. Updates are atomic per key; scans are weakly consistent,
+ * i.e. they never fail because of concurrent updates and may or may not see a
+ * change that is in progress.
+ */
+interface KeyIndex {
+
+    VersionSet get(String key);
+
+    /**
+     * @return the chain that is already stored under the key or null, if the given
+     * one has been stored
+     */
+    VersionSet putIfAbsent(String key, VersionSet versions);
+
+    void put(String key, VersionSet versions);
+
+    /**
+     * Removes the key, if the given chain is stored under it.
+     */
+    boolean remove(String key, VersionSet versions);
+
+    /**
+     * Adds the chains of the given index, replacing the chains of existing keys.
+     */
+    default void putAll(KeyIndex other) {
+        Iterator<Map.Entry<String, VersionSet>> entries = other.entries(null, true);
+        while (entries.hasNext()) {
+            Map.Entry<String, VersionSet> entry = entries.next();
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @param key the key to start at (inclusive) or null to iterate over all keys
+     * @param asc
+     * @return the keys and their chains in ascending or descending order
+     */
+    Iterator<Map.Entry<String, VersionSet>> entries(String key, boolean asc);
+
+    /**
+     * @return a copy of this index, which must not change concurrently
+     */
+    KeyIndex copy();
+}
@@ -1,13 +1,29 @@
 package de.unihamburg.sickstore.backend;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import de.unihamburg.sickstore.backend.anomaly.Anomaly;
 import de.unihamburg.sickstore.backend.anomaly.AnomalyGenerator;
+import de.unihamburg.sickstore.backend.anomaly.staleness.StalenessMap;
 import de.unihamburg.sickstore.backend.measurement.Measurements;
+import de.unihamburg.sickstore.backend.offheap.SlabAllocator;
 import de.unihamburg.sickstore.backend.timer.SystemTimeHandler;
 import de.unihamburg.sickstore.backend.timer.TimeHandler;
 import de.unihamburg.sickstore.config.InstanceFactory;
@@ -17,22 +33,38 @@ import de.unihamburg.sickstore.database.messages.exception.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Processes client requests on a fixed number of partitions. Every request is
+ * routed by the hash of its key onto the single thread of one partition, so
+ * that all requests for the same key are processed in the order in which they
+ * arrived, while requests for different keys are processed in parallel.
+ */
 public class QueryHandler implements QueryHandlerInterface {
 	private static final Logger log = LoggerFactory.getLogger("sickstore");
 	private Boolean logstaleness = false;
 	private Boolean loglatency = false;
 	private Boolean printstatus = false;
 	private static Measurements measurements = null;
-	private TimeHandler timeHandler = new SystemTimeHandler();
-	private Store mediator;
-	protected Set<Node> nodes = new HashSet<>();
+	private volatile TimeHandler timeHandler = new SystemTimeHandler();
+	private StorageEngine mediator;
+	protected volatile Set<Node> nodes = new HashSet<>();
 	private AnomalyGenerator anomalyGenerator;
+	private final Partition[] partitions;
+	private volatile ScheduledExecutorService garbageCollector;
+	/** runs checkpoints and rollbacks one at a time */
+	private final ExecutorService admin = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+			.setNameFormat("SickStore-admin")
+			.setDaemon(true)
+			.build());
+	/** file the store is restored from and written to on shutdown, if any */
+	private Path snapshot;
+	/** log of all writes, if any */
+	private volatile Journal journal;
 	private int warmup = 0;
-	private int warmupCounter = 0;
-	private Boolean firstRequest = true;
-	private int requestCounter = 0;
-	private long startTime = 0;
-	private long scheduleTimeNanos = 0;
+	private final AtomicInteger warmupCounter = new AtomicInteger();
+	private final AtomicBoolean firstRequest = new AtomicBoolean(true);
+	private volatile long startTime = 0;
+	private final AtomicLong scheduleTimeNanos = new AtomicLong();
 
 
 	@SuppressWarnings("unused")
@@ -48,6 +80,11 @@ public class QueryHandler implements QueryHandlerInterface {
 		}
 
 		int warmup = (int) config.get("warmup");
+		int partitions = (int) config.getOrDefault("partitions", Runtime.getRuntime().availableProcessors());
+		int gcInterval = (int) config.getOrDefault("gcInterval", 1000);
+		String snapshot = (String) config.get("snapshot");
+		Map<String, Object> journalConfig = (Map<String, Object>) config.get("journal");
+		Map<String, Object> storeConfig = (Map<String, Object>) config.get("store");
 
 		Boolean loglatency = (Boolean) config.get("loglatency");
 		Boolean logstaleness = (Boolean) config.get("logstaleness");
@@ -58,26 +95,57 @@ public class QueryHandler implements QueryHandlerInterface {
 		AnomalyGenerator anomalyGenerator = (AnomalyGenerator) InstanceFactory
 			.newInstanceFromConfig(anomalyGeneratorConfig);
 
-		return new QueryHandler(new Store(), anomalyGenerator, nodes, warmup, logstaleness, loglatency,printstatus);
+		StorageEngine store = storeConfig == null
+				? new Store()
+				: (StorageEngine) InstanceFactory.newInstanceFromConfig(storeConfig);
+
+		QueryHandler queryHandler = new QueryHandler(store, anomalyGenerator, nodes, new SystemTimeHandler(),
+				warmup, logstaleness, loglatency, printstatus, partitions);
+		if (snapshot != null) {
+			queryHandler.restoreSnapshot(Paths.get(snapshot));
+		}
+		if (journalConfig != null) {
+			queryHandler.setJournal((Journal) InstanceFactory.newInstanceFromConfig(journalConfig));
+		}
+		queryHandler.startGarbageCollection(gcInterval);
+		return queryHandler;
 	}
 
-	public QueryHandler(Store mediator,
+	public QueryHandler(StorageEngine mediator,
 						AnomalyGenerator anomalyGenerator,
 						Set<Node> nodes,
 						TimeHandler timeHandler,
 						int warmup, Boolean logstaleness,Boolean loglatency, Boolean printstatus) {
-		this(mediator, anomalyGenerator, nodes, warmup, logstaleness, loglatency,printstatus);
-		this.timeHandler = timeHandler;
+		this(mediator, anomalyGenerator, nodes, timeHandler, warmup, logstaleness, loglatency, printstatus,
+				Runtime.getRuntime().availableProcessors());
 	}
 
-	public QueryHandler(Store mediator,
+	public QueryHandler(StorageEngine mediator,
 						AnomalyGenerator anomalyGenerator,
 						Set<Node> nodes, int warmup, Boolean logstaleness,Boolean loglatency, Boolean printstatus) {
+		this(mediator, anomalyGenerator, nodes, new SystemTimeHandler(), warmup, logstaleness, loglatency,
+				printstatus);
+	}
+
+	/**
+	 * @param partitions number of partitions (threads) requests are processed on
+	 */
+	public QueryHandler(StorageEngine mediator,
+						AnomalyGenerator anomalyGenerator,
+						Set<Node> nodes,
+						TimeHandler timeHandler,
+						int warmup, Boolean logstaleness, Boolean loglatency, Boolean printstatus,
+						int partitions) {
+		if (partitions < 1) {
+			throw new IllegalArgumentException("There must be at least one partition");
+		}
 		this.mediator = mediator;
 		this.anomalyGenerator = anomalyGenerator;
+		Node.assignOrdinals(nodes);
 		this.nodes = nodes;
+		this.timeHandler = timeHandler;
 		this.warmup = warmup;
-		this.warmupCounter = warmup;
+		this.warmupCounter.set(warmup);
 		if(logstaleness != null) this.logstaleness = logstaleness;
 		if(loglatency != null) this.loglatency = logstaleness;
 		if(printstatus != null) this.printstatus = printstatus;
@@ -85,9 +153,14 @@ public class QueryHandler implements QueryHandlerInterface {
 		if (measurements == null) {
 			measurements = new Measurements(this.printstatus);
 		}
+
+		this.partitions = new Partition[partitions];
+		for (int i = 0; i < partitions; i++) {
+			this.partitions[i] = new Partition(i);
+		}
 	}
 
-	public synchronized Set<Node> getNodes() {
+	public Set<Node> getNodes() {
 		return nodes;
 	}
 
@@ -105,7 +178,8 @@ public class QueryHandler implements QueryHandlerInterface {
 		}
 
 		Anomaly anomaly = anomalyGenerator.handleRequest(request, getNodes());
-		mediator.delete(node, key, anomaly.getStalenessMap(), timestamp);
+		Version delete = mediator.delete(request.getTable(), node, key, anomaly.getStalenessMap(), timestamp);
+		journal(request.getTable(), delete);
 
 		ServerResponseDelete response = new ServerResponseDelete(clientRequestID);
 		anomalyGenerator.handleResponse(anomaly, request, response, getNodes());
@@ -130,11 +204,12 @@ public class QueryHandler implements QueryHandlerInterface {
 
 
 		Anomaly anomaly = anomalyGenerator.handleRequest(request, getNodes());
-		version.setVisibility(anomaly.getStalenessMap());
 		version.setWrittenAt(timestamp);
+		version.setVisibility(anomaly.getStalenessMap());
 		version.setWrittenBy(node);
 		version.setKey(request.getKey());
-		mediator.insert(node, key, version);
+		mediator.insert(request.getTable(), node, key, version);
+		journal(request.getTable(), version);
 
 		ServerResponseInsert response = new ServerResponseInsert(clientRequestID);
 		anomalyGenerator.handleResponse(anomaly, request, response, getNodes());
@@ -157,7 +232,7 @@ public class QueryHandler implements QueryHandlerInterface {
 		Anomaly anomaly = anomalyGenerator.handleRequest(request, getNodes());
 		Node node = anomaly.getResponsiveNode();
 
-		Version version = mediator.get(node, key, columns, timestamp, logstaleness);
+		Version version = mediator.get(request.getTable(), node, key, columns, timestamp, logstaleness);
 		if (version == null) {
 			throw new NullPointerException("Version must not be null!");
 		}
@@ -185,7 +260,8 @@ public class QueryHandler implements QueryHandlerInterface {
 
 		Anomaly anomaly = anomalyGenerator.handleRequest(request, getNodes());
 		Node node = anomaly.getResponsiveNode();
-		List<Version> versions = mediator.getRange(node, key, range, asc, columns, timestamp);
+		List<Version> versions = mediator.getRange(request.getTable(), node, key, range, asc,
+				columns, timestamp, logstaleness);
 		ServerResponseScan response = new ServerResponseScan(clientRequestID, versions);
 		anomalyGenerator.handleResponse(anomaly, request, response, getNodes());
 		return response;
@@ -206,21 +282,49 @@ public class QueryHandler implements QueryHandlerInterface {
 		}
 
 		Anomaly anomaly = anomalyGenerator.handleRequest(request, getNodes());
-		version.setVisibility(anomaly.getStalenessMap());
 		version.setWrittenAt(timestamp);
+		version.setVisibility(anomaly.getStalenessMap());
 		version.setKey(request.getKey());
-		mediator.update(node, key, version);
+		mediator.update(request.getTable(), node, key, version);
+		journal(request.getTable(), version);
 
 		ServerResponseUpdate response = new ServerResponseUpdate(clientRequestID);
 		anomalyGenerator.handleResponse(anomaly, request, response, getNodes());
 		return response;
 	}
 
+	/**
+	 * Handles upsert request.
+	 */
+	private ServerResponseUpsert process(ClientRequestUpsert request)
+			throws NoKeyProvidedException {
+		Node node = request.getReceivedBy();
+		String key = request.getKey();
+		long timestamp = request.getReceivedAt();
+		int clientRequestID = request.getId();
+		Version version = request.getVersion();
+		if (key == null) {
+			throw new NoKeyProvidedException("Cannot process upsert request; no key was provided.");
+		}
+
+		Anomaly anomaly = anomalyGenerator.handleRequest(request, getNodes());
+		version.setWrittenAt(timestamp);
+		version.setVisibility(anomaly.getStalenessMap());
+		version.setWrittenBy(node);
+		version.setKey(request.getKey());
+		mediator.upsert(request.getTable(), node, key, version);
+		journal(request.getTable(), version);
+
+		ServerResponseUpsert response = new ServerResponseUpsert(clientRequestID);
+		anomalyGenerator.handleResponse(anomaly, request, response, getNodes());
+		return response;
+	}
+
 	private ServerResponseCleanup process(ClientRequestCleanup request) {
 		int clientRequestID = request.getId();
 		Anomaly anomaly = anomalyGenerator.handleRequest(request, getNodes());
 		try {
-			warmupCounter = warmup;
+			warmupCounter.set(warmup);
 			measurements.finishMeasurement();
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -228,8 +332,10 @@ public class QueryHandler implements QueryHandlerInterface {
 		getNodes().forEach(node -> {
 			node.getThroughput().cleanUp();
 		});
-		requestCounter = 0;
-		firstRequest = true;
+		for (Partition partition : partitions) {
+			partition.requestCounter.set(0);
+		}
+		firstRequest.set(true);
 
 		ServerResponseCleanup response = new ServerResponseCleanup(clientRequestID);
 		anomalyGenerator.handleResponse(anomaly, request, response, getNodes());
@@ -237,14 +343,283 @@ public class QueryHandler implements QueryHandlerInterface {
 	}
 
 	/**
-	 * Processes an incoming query.
+	 * Processes an incoming query and waits for its response.
+	 */
+	@Override
+	public ServerResponse processQuery(ClientRequest request) {
+		return processQueryAsync(request).join();
+	}
+
+	/**
+	 * Hands an incoming query over to the partition that is responsible for its key.
 	 */
 	@Override
-	public synchronized ServerResponse processQuery(ClientRequest request) {
-		if(firstRequest) {
+	public CompletableFuture<ServerResponse> processQueryAsync(ClientRequest request) {
+		CompletableFuture<ServerResponse> response;
+		if (request instanceof ClientRequestMulti) {
+			response = processMultiAsync((ClientRequestMulti<?>) request);
+		} else if (request instanceof ClientRequestBulkLoad) {
+			response = processBulkLoadAsync((ClientRequestBulkLoad) request);
+		} else if (request instanceof ClientRequestCheckpoint) {
+			response = processCheckpointAsync((ClientRequestCheckpoint) request);
+		} else {
+			Partition partition = getPartition(request.getTable(), request.getKey());
+			response = CompletableFuture.supplyAsync(() -> execute(request, partition), partition.executor);
+		}
+		return isJournaled(request) ? awaitJournal(request, response) : response;
+	}
+
+	/**
+	 * @return true, if the request must not be acknowledged before it is on disk
+	 */
+	private boolean isJournaled(ClientRequest request) {
+		if (journal == null) {
+			return false;
+		}
+		if (request instanceof ClientRequestMulti) {
+			for (ClientRequest item : ((ClientRequestMulti<?>) request).getRequests()) {
+				if (isJournaled(item)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return request instanceof ClientRequestWrite
+				&& ((ClientRequestWrite) request).getWriteConcern() != null
+				&& ((ClientRequestWrite) request).getWriteConcern().isJournaling();
+	}
+
+	/**
+	 * Delays the response until the next commit of the journal, which contains the
+	 * writes of the request. The time spent waiting is measured as JOURNAL_WAIT.
+	 */
+	private CompletableFuture<ServerResponse> awaitJournal(ClientRequest request,
+			CompletableFuture<ServerResponse> response) {
+		return response.thenCompose(result -> {
+			if (result instanceof ServerResponseException) {
+				return CompletableFuture.completedFuture(result);
+			}
+			long start = System.currentTimeMillis();
+			return journal.sync().handle((done, cause) -> {
+				if (cause != null) {
+					return new ServerResponseException(request.getId(),
+							new DatabaseException("Could not commit the journal: " + cause.getMessage()));
+				}
+				measurements.measure("JOURNAL_WAIT", System.currentTimeMillis() - start);
+				return result;
+			});
+		});
+	}
+
+	/**
+	 * Routes a batch once and hands its items over to their partitions, so that each
+	 * partition processes all of its items within a single task. Each item is processed
+	 * like a single request, i.e. with its own anomaly.
+	 */
+	private CompletableFuture<ServerResponse> processMultiAsync(ClientRequestMulti<?> request) {
+		List<? extends ClientRequest> items = request.getRequests();
+		Node node;
+		try {
+			node = findNode(request);
+		} catch (DatabaseException e) {
+			return CompletableFuture.completedFuture(new ServerResponseException(request.getId(), e));
+		}
+
+		// group the items by partition, preserving their order within each partition
+		int[] partitionOf = new int[items.size()];
+		int[] itemsPerPartition = new int[partitions.length];
+		for (int i = 0; i < items.size(); i++) {
+			ClientRequest item = items.get(i);
+			item.setId(i);
+			item.setReceivedBy(node);
+			item.setDestinationNode(request.getDestinationNode());
+			item.setSendedByClientAt(request.getSendedByClientAt());
+			partitionOf[i] = getPartitionIndex(item.getTable(), item.getKey());
+			itemsPerPartition[partitionOf[i]]++;
+		}
+
+		ServerResponse[] responses = new ServerResponse[items.size()];
+		List<CompletableFuture<Void>> tasks = new ArrayList<>();
+		for (int p = 0; p < partitions.length; p++) {
+			if (itemsPerPartition[p] == 0) {
+				continue;
+			}
+			int index = p;
+			Partition partition = partitions[p];
+			tasks.add(CompletableFuture.runAsync(() -> {
+				for (int i = 0; i < partitionOf.length; i++) {
+					if (partitionOf[i] == index) {
+						responses[i] = execute(items.get(i), partition);
+					}
+				}
+			}, partition.executor));
+		}
+
+		return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[tasks.size()])).thenApply(done -> {
+			List<ServerResponse> itemResponses = Arrays.asList(responses);
+			ServerResponseMulti response = request instanceof ClientRequestMultiRead
+					? new ServerResponseMultiRead(request.getId(), itemResponses)
+					: new ServerResponseMultiWrite(request.getId(), itemResponses);
+			long waitTimeout = 0;
+			for (ServerResponse itemResponse : itemResponses) {
+				if (itemResponse.getWaitTimeout() != null) {
+					waitTimeout = Math.max(waitTimeout, itemResponse.getWaitTimeout());
+				}
+			}
+			response.setWaitTimeout(waitTimeout);
+			response.setSentByClientAt(request.getSendedByClientAt());
+			return response;
+		});
+	}
+
+	/**
+	 * Loads a window of records. The records are split by partition and every partition
+	 * loads its share at once, so that all partitions load in parallel. All records share
+	 * a single anomaly, or none at all if the client asked to skip anomalies.
+	 */
+	private CompletableFuture<ServerResponse> processBulkLoadAsync(ClientRequestBulkLoad request) {
+		Anomaly anomaly = null;
+		try {
+			request.setReceivedAt(timeHandler.getCurrentTime());
+			request.setReceivedBy(findNode(request));
+			if (request.isGenerateAnomalies()) {
+				anomaly = anomalyGenerator.handleRequest(request, getNodes());
+			}
+		} catch (Exception e) {
+			return CompletableFuture.completedFuture(new ServerResponseException(request.getId(), e));
+		}
+
+		StalenessMap visibility = anomaly == null ? null : anomaly.getStalenessMap();
+		List<List<Version>> versionsPerPartition = new ArrayList<>(partitions.length);
+		for (int p = 0; p < partitions.length; p++) {
+			versionsPerPartition.add(new ArrayList<>());
+		}
+		for (Version version : request.getVersions()) {
+			version.setWrittenAt(request.getReceivedAt());
+			version.setVisibility(visibility);
+			version.setWrittenBy(request.getReceivedBy());
+			versionsPerPartition.get(getPartitionIndex(request.getTable(), version.getKey())).add(version);
+		}
+
+		String table = request.getTable();
+		List<CompletableFuture<Integer>> tasks = new ArrayList<>();
+		for (int p = 0; p < partitions.length; p++) {
+			List<Version> versions = versionsPerPartition.get(p);
+			if (versions.isEmpty()) {
+				continue;
+			}
+			Partition partition = partitions[p];
+			tasks.add(CompletableFuture.supplyAsync(() -> {
+				partition.requestCounter.addAndGet(versions.size());
+				int loaded = mediator.bulkLoad(table, versions, request.isCheckExistence());
+				Journal journal = this.journal;
+				if (journal != null) {
+					for (Version version : versions) {
+						if (request.isCheckExistence()) {
+							journal.appendBulkLoad(table, version);
+						} else {
+							journal.append(table, version);
+						}
+					}
+				}
+				return loaded;
+			}, partition.executor));
+		}
+
+		Anomaly bulkAnomaly = anomaly;
+		return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[tasks.size()])).handle((done, cause) -> {
+			if (cause != null) {
+				Throwable error = cause.getCause() != null ? cause.getCause() : cause;
+				return new ServerResponseException(request.getId(),
+						error instanceof Exception ? (Exception) error : new Exception(error));
+			}
+			int loaded = 0;
+			for (CompletableFuture<Integer> task : tasks) {
+				loaded += task.join();
+			}
+			ServerResponse response = new ServerResponseBulkLoad(request.getId(), loaded);
+			if (bulkAnomaly != null) {
+				anomalyGenerator.handleResponse(bulkAnomaly, request, response, getNodes());
+			} else {
+				response.setSentByClientAt(request.getSendedByClientAt());
+			}
+			return response;
+		});
+	}
+
+	/**
+	 * Takes a checkpoint of the store or rolls it back while all partitions and the
+	 * garbage collector are paused, so that no write or pruning is processed in
+	 * between. Pausing runs on the admin thread, as two rounds of pauses that overlap
+	 * could each hold some partitions and wait for the others forever.
+	 */
+	private CompletableFuture<ServerResponse> processCheckpointAsync(ClientRequestCheckpoint request) {
+		return CompletableFuture.supplyAsync(() -> {
+			List<Executor> executors = new ArrayList<>();
+			for (Partition partition : partitions) {
+				executors.add(partition.executor);
+			}
+			ScheduledExecutorService garbageCollector = this.garbageCollector;
+			if (garbageCollector != null) {
+				executors.add(garbageCollector);
+			}
+			CountDownLatch paused = new CountDownLatch(executors.size());
+			CountDownLatch resumed = new CountDownLatch(1);
+			ServerResponse response;
+			try {
+				for (Executor executor : executors) {
+					executor.execute(() -> {
+						paused.countDown();
+						Uninterruptibles.awaitUninterruptibly(resumed);
+					});
+				}
+				Uninterruptibles.awaitUninterruptibly(paused);
+				if (!request.isRollback()) {
+					mediator.checkpoint();
+				} else if (!mediator.rollback()) {
+					throw new DatabaseException("Cannot roll back; there is no checkpoint.");
+				}
+				Journal journal = this.journal;
+				if (journal != null) {
+					journal.appendCheckpoint(request.isRollback());
+				}
+				response = new ServerResponseCheckpoint(request.getId());
+			} catch (Exception e) {
+				response = new ServerResponseException(request.getId(), e);
+			} finally {
+				resumed.countDown();
+			}
+			response.setSentByClientAt(request.getSendedByClientAt());
+			return response;
+		}, admin);
+	}
+
+	/**
+	 * Returns the partition that processes all requests for the given key of the given table.
+	 */
+	private Partition getPartition(String table, String key) {
+		return partitions[getPartitionIndex(table, key)];
+	}
+
+	private int getPartitionIndex(String table, String key) {
+		if (key == null || partitions.length == 1) {
+			return 0;
+		}
+		int hash = key.hashCode();
+		if (table != null) {
+			hash = 31 * table.hashCode() + hash;
+		}
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % partitions.length;
+	}
+
+	/**
+	 * Processes an incoming query on the thread of its partition.
+	 */
+	private ServerResponse execute(ClientRequest request, Partition partition) {
+		if (firstRequest.compareAndSet(true, false)) {
 			startTime = System.nanoTime();
-			scheduleTimeNanos = startTime;
-			firstRequest = false;
+			scheduleTimeNanos.set(startTime);
 		}
 		if(this.printstatus) {
 			report();
@@ -255,24 +630,9 @@ public class QueryHandler implements QueryHandlerInterface {
 			request.setReceivedAt(timeHandler.getCurrentTime());
 			id = request.getId();
 
-			// Find destination node
-			if (request.getDestinationNode() == null) {
-				// no destination node given, search primary
-				for (Node node : getNodes()) {
-					if (node.isPrimary()) {
-						request.setReceivedBy(node);
-						break;
-					}
-				}
-			} else {
-				for (Node node : getNodes()) {
-					if (node.getName().equals(request.getDestinationNode())) {
-						request.setReceivedBy(node);
-					}
-				}
-			}
+			// Find destination node, the items of a batch have been routed together with the batch
 			if (request.getReceivedBy() == null) {
-				throw new DatabaseException("Did not find the node this request is pointed to (" + request.getDestinationNode() + ")");
+				request.setReceivedBy(findNode(request));
 			}
 			if (request instanceof ClientRequestDelete) {
 				// delete request
@@ -289,6 +649,9 @@ public class QueryHandler implements QueryHandlerInterface {
 			} else if (request instanceof ClientRequestUpdate) {
 				// update request
 				response = process((ClientRequestUpdate) request);
+			} else if (request instanceof ClientRequestUpsert) {
+				// upsert request
+				response = process((ClientRequestUpsert) request);
 			} else if (request instanceof ClientRequestCleanup) {
 				// cleanup request
 				response = process((ClientRequestCleanup) request);
@@ -298,15 +661,13 @@ public class QueryHandler implements QueryHandlerInterface {
 								+ request.getClass());
 			}
 
-			if(warmupCounter > 0) {
-				warmupCounter -= 1;
-			}
-			else {
+			if (!consumeWarmup()) {
 				if (request instanceof ClientRequestDelete
 						|| request instanceof ClientRequestInsert
 						|| request instanceof ClientRequestRead
 						|| request instanceof ClientRequestScan
-						|| request instanceof ClientRequestUpdate) {
+						|| request instanceof ClientRequestUpdate
+						|| request instanceof ClientRequestUpsert) {
 					long waitTimeout = response.getWaitTimeout();
 
 					long sendByClientAt = request.getSendedByClientAt();
@@ -331,24 +692,213 @@ public class QueryHandler implements QueryHandlerInterface {
 			response = new ServerResponseException(id, e);
 			e.printStackTrace();
 		}
-		requestCounter++;
+		partition.requestCounter.incrementAndGet();
 		return response;
 	}
 
+	/**
+	 * Finds the node a request is pointed to.
+	 *
+	 * @return the destination node or the primary if the request has no destination node
+	 */
+	private Node findNode(ClientRequest request) throws DatabaseException {
+		Node receivedBy = null;
+		if (request.getDestinationNode() == null) {
+			// no destination node given, search primary
+			for (Node node : getNodes()) {
+				if (node.isPrimary()) {
+					receivedBy = node;
+					break;
+				}
+			}
+		} else {
+			for (Node node : getNodes()) {
+				if (node.getName().equals(request.getDestinationNode())) {
+					receivedBy = node;
+				}
+			}
+		}
+		if (receivedBy == null) {
+			throw new DatabaseException("Did not find the node this request is pointed to (" + request.getDestinationNode() + ")");
+		}
+		return receivedBy;
+	}
+
+	/**
+	 * Counts down the warmup phase; requests of the warmup phase are not measured.
+	 *
+	 * @return true, if the current request still belongs to the warmup phase
+	 */
+	private boolean consumeWarmup() {
+		return warmupCounter.get() > 0 && warmupCounter.getAndDecrement() > 0;
+	}
+
 	private void report() {
 		long now = System.nanoTime();
-		if(now - scheduleTimeNanos >= 10000000000L) {
-			scheduleTimeNanos = now;
+		long scheduled = scheduleTimeNanos.get();
+		if(now - scheduled >= 10000000000L && scheduleTimeNanos.compareAndSet(scheduled, now)) {
+			int requestCounter = 0;
+			for (Partition partition : partitions) {
+				requestCounter += partition.requestCounter.get();
+			}
 			Double throughput = 1000000000.0 * requestCounter / (now - startTime);
 			measurements.report(requestCounter, throughput);
+			if (printstatus && mediator instanceof Store) {
+				SlabAllocator slabs = ((Store) mediator).getSlabAllocator();
+				if (slabs != null) {
+					log.info("SickStore off-heap columns: {} bytes in {} slabs",
+							slabs.getAllocatedBytes(), slabs.getSlabs());
+				}
+			}
 		}
 	}
 
-	public synchronized void setTimeHandler(TimeHandler timeHandler) {
+	/**
+	 * Periodically removes versions from the store that no node can read anymore.
+	 * Writes already clean up the version chain of their key; this additionally
+	 * reclaims keys that are not written again, e.g. deleted ones.
+	 *
+	 * @param interval interval in ms, garbage collection is disabled if it is not positive
+	 */
+	public synchronized void startGarbageCollection(long interval) {
+		if (garbageCollector != null || interval <= 0) {
+			return;
+		}
+		garbageCollector = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("SickStore-gc")
+				.setDaemon(true)
+				.build());
+		garbageCollector.scheduleWithFixedDelay(() -> {
+			try {
+				mediator.prune();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Restores the store from the given snapshot, if it exists, and writes the
+	 * store to it again on {@link #shutdown()}.
+	 *
+	 * @param snapshot
+	 */
+	public void restoreSnapshot(Path snapshot) {
+		this.snapshot = snapshot;
+		if (!Files.exists(snapshot)) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		try {
+			int keys = mediator.restoreSnapshot(snapshot, getNodes());
+			log.info("Restored {} keys from {} in {} ms", keys, snapshot,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not restore snapshot " + snapshot, e);
+		}
+	}
+
+	/**
+	 * Replays the given journal into the store and appends all further writes to it.
+	 * Writes with a journaling write concern are acknowledged once they are on disk.
+	 *
+	 * @param journal
+	 */
+	public void setJournal(Journal journal) {
+		long start = System.nanoTime();
+		try {
+			int records = journal.replay(mediator, getNodes());
+			log.info("Replayed {} journal records in {} ms", records,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not replay journal", e);
+		}
+		this.journal = journal;
+	}
+
+	private void journal(String table, Version version) {
+		Journal journal = this.journal;
+		if (journal != null) {
+			journal.append(table, version);
+		}
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		admin.shutdown();
+		for (Partition partition : partitions) {
+			partition.executor.shutdown();
+		}
+		if (garbageCollector != null) {
+			garbageCollector.shutdown();
+		}
+		if (snapshot == null && journal == null) {
+			return;
+		}
+
+		try {
+			for (Partition partition : partitions) {
+				partition.executor.awaitTermination(10, TimeUnit.SECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (snapshot != null) {
+			writeSnapshot();
+		}
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				log.error("Could not close journal", e);
+			}
+			journal = null;
+		}
+	}
+
+	/**
+	 * Writes the store to the snapshot; the journal is not needed anymore afterwards.
+	 */
+	private void writeSnapshot() {
+		try {
+			mediator.writeSnapshot(snapshot, getNodes());
+			log.info("Wrote snapshot to {}", snapshot);
+			if (journal != null) {
+				journal.reset();
+			}
+		} catch (IOException e) {
+			log.error("Could not write snapshot " + snapshot, e);
+		}
+		snapshot = null;
+	}
+
+	public void setTimeHandler(TimeHandler timeHandler) {
 		this.timeHandler = timeHandler;
 	}
 
-	public synchronized void setNodes(Set<Node> nodes) {
+	public void setNodes(Set<Node> nodes) {
+		Node.assignOrdinals(nodes);
 		this.nodes = nodes;
 	}
+
+	public int getPartitions() {
+		return partitions.length;
+	}
+
+	/**
+	 * A single-writer execution lane with its own request counter.
+	 */
+	private static class Partition {
+		private final ExecutorService executor;
+		private final AtomicLong requestCounter = new AtomicLong();
+
+		Partition(int index) {
+			this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+					.setNameFormat("SickStore-partition-" + index)
+					.setDaemon(true)
+					.build());
+		}
+	}
 }
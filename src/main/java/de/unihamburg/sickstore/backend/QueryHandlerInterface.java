@@ -3,6 +3,24 @@ package de.unihamburg.sickstore.backend;
 import de.unihamburg.sickstore.database.messages.ClientRequest;
 import de.unihamburg.sickstore.database.messages.ServerResponse;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface QueryHandlerInterface {
     ServerResponse processQuery(ClientRequest request);
+
+    /**
+     * Processes an incoming query without blocking the calling thread.
+     *
+     * @param request
+     * @return a future that is completed with the response
+     */
+    default CompletableFuture<ServerResponse> processQueryAsync(ClientRequest request) {
+        return CompletableFuture.completedFuture(processQuery(request));
+    }
+
+    /**
+     * Releases all resources (e.g. threads) held by this query handler.
+     */
+    default void shutdown() {
+    }
 }
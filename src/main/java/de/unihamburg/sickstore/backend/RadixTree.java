@@ -0,0 +1,591 @@
+package de.unihamburg.sickstore.backend;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+
+/**
+ * {@link KeyIndex} based on a radix tree (compressed trie) over the chars of the
+ * keys, which serves point operations and scans alike. Shared prefixes, such as
+ * "user" of YCSB keys, are not stored at all: an inner node only knows the position
+ * of the char its children branch on, and the chars before it are those of any
+ * key below the node. Every key is held once, by its leaf, which refers to the key
+ * string the table stores anyway; a lookup compares single chars on its way down
+ * and the whole key only at the leaf.
+ *
+ * Readers never block. Writers only lock the nodes they change, always from the
+ * root downwards: setting the chain of a key locks its leaf, adding a key locks the
+ * node it is added to, splitting a node locks its parent and the node, and removing
+ * a key locks the grandparent, the parent and the leaf and, if the parent is left
+ * with a single entry, that entry. A node that moves to another parent is replaced
+ * by a copy; writers that find a replaced node start over, while readers that still
+ * reach it see the chains it had when it was replaced.
+ */
+class RadixTree implements KeyIndex {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private abstract static class Node {
+        /** the char the parent branches on, which all keys below the node share */
+        final char label;
+        /** whether the node is no longer part of the tree; guarded by the lock of the node */
+        boolean replaced;
+
+        Node(char label) {
+            this.label = label;
+        }
+    }
+
+    private static final class Leaf extends Node {
+        final String key;
+        /** the chain of the key, null once the key has been removed */
+        volatile VersionSet value;
+
+        Leaf(char label, String key, VersionSet value) {
+            super(label);
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * All keys below an inner node share their first {@link #depth} chars and their
+     * children branch on the next one. Apart from the root, an inner node always has
+     * two entries at least, a key of exactly {@link #depth} chars and children.
+     */
+    private static final class Inner extends Node {
+        final int depth;
+        /** the key that ends at this node, null if there is none */
+        volatile Leaf leaf;
+        /** ordered by their labels, the array is replaced on every change */
+        volatile Node[] children;
+
+        Inner(char label, int depth, Leaf leaf, Node[] children) {
+            super(label);
+            this.depth = depth;
+            this.leaf = leaf;
+            this.children = children;
+        }
+    }
+
+    /** holds the empty key, it is never replaced */
+    private final Inner root;
+
+    RadixTree() {
+        this(new Inner((char) 0, 0, null, NO_CHILDREN));
+    }
+
+    private RadixTree(Inner root) {
+        this.root = root;
+    }
+
+    @Override
+    public VersionSet get(String key) {
+        Leaf leaf = find(key);
+        return leaf != null && leaf.key.equals(key) ? leaf.value : null;
+    }
+
+    /**
+     * @return the leaf the chars the key branches on lead to, which holds the key if
+     * the tree contains it, or null if they lead nowhere
+     */
+    private Leaf find(String key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            if (key.length() <= inner.depth) {
+                return key.length() == inner.depth ? inner.leaf : null;
+            }
+            node = child(inner.children, key.charAt(inner.depth));
+        }
+        return (Leaf) node;
+    }
+
+    @Override
+    public VersionSet putIfAbsent(String key, VersionSet versions) {
+        return put(key, versions, true);
+    }
+
+    @Override
+    public void put(String key, VersionSet versions) {
+        put(key, versions, false);
+    }
+
+    /**
+     * @return the chain that has been stored under the key before
+     */
+    private VersionSet put(String key, VersionSet versions, boolean onlyIfAbsent) {
+        retry:
+        while (true) {
+            // any key below the node the key leads to shares the most chars with it
+            Node node = root;
+            while (node instanceof Inner) {
+                Inner inner = (Inner) node;
+                Node child = key.length() > inner.depth ? child(inner.children, key.charAt(inner.depth)) : null;
+                if (child == null) {
+                    break;
+                }
+                node = child;
+            }
+            Leaf closest = node instanceof Leaf ? (Leaf) node : firstLeaf((Inner) node);
+            int shared = closest == null ? 0 : match(key, closest.key);
+
+            if (shared == key.length() && closest != null && shared == closest.key.length()) {
+                synchronized (closest) {
+                    if (closest.replaced) {
+                        continue retry;
+                    }
+                    VersionSet existing = closest.value;
+                    if (existing == null || !onlyIfAbsent) {
+                        closest.value = versions;
+                    }
+                    return existing;
+                }
+            }
+
+            // the key branches off after the shared chars, below the deepest node above them
+            Inner parent = root;
+            while (parent.depth < shared) {
+                Node[] children = parent.children;
+                int i = search(children, key.charAt(parent.depth));
+                if (i < 0) {
+                    continue retry;
+                }
+                Node child = children[i];
+                if (child instanceof Inner && ((Inner) child).depth <= shared) {
+                    parent = (Inner) child;
+                } else if (split(parent, children, i, key, shared, versions)) {
+                    return null;
+                } else {
+                    continue retry;
+                }
+            }
+            if (add(parent, key, versions)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Adds the key to the node, whose depth is the number of chars the key shares
+     * with the keys below it.
+     *
+     * @return false, if the node has changed concurrently
+     */
+    private boolean add(Inner node, String key, VersionSet versions) {
+        synchronized (node) {
+            if (node.replaced || (node != root && match(key, firstLeaf(node).key) < node.depth)) {
+                return false;
+            }
+            if (key.length() == node.depth) {
+                if (node.leaf != null) {
+                    return false;
+                }
+                node.leaf = new Leaf((char) 0, key, versions);
+                return true;
+            }
+            Node[] children = node.children;
+            int i = search(children, key.charAt(node.depth));
+            if (i >= 0) {
+                return false;
+            }
+            node.children = insert(children, -i - 1, new Leaf(key.charAt(node.depth), key, versions));
+            return true;
+        }
+    }
+
+    /**
+     * Replaces the child at the given index by a node that branches where the key
+     * branches off the keys of the child, and adds the key to it.
+     *
+     * @param children the children of the node the child has been found in
+     * @param shared   the number of chars the key shares with the keys of the child
+     * @return false, if the node or the child have changed concurrently
+     */
+    private static boolean split(Inner node, Node[] children, int i, String key, int shared,
+                                 VersionSet versions) {
+        synchronized (node) {
+            if (node.replaced || node.children != children) {
+                return false;
+            }
+            Node child = children[i];
+            synchronized (child) {
+                String sample = child instanceof Leaf ? ((Leaf) child).key : firstLeaf((Inner) child).key;
+                if (match(key, sample) != shared || (sample.length() == shared && key.length() == shared)) {
+                    return false;
+                }
+
+                Node moved = copy(child, sample, shared);
+                Leaf added = new Leaf(key.length() > shared ? key.charAt(shared) : 0, key, versions);
+                Inner replacement;
+                if (sample.length() == shared) {
+                    replacement = new Inner(child.label, shared, (Leaf) moved, new Node[]{added});
+                } else if (key.length() == shared) {
+                    replacement = new Inner(child.label, shared, added, new Node[]{moved});
+                } else {
+                    replacement = new Inner(child.label, shared, null, moved.label < added.label
+                            ? new Node[]{moved, added} : new Node[]{added, moved});
+                }
+                child.replaced = true;
+
+                Node[] updated = children.clone();
+                updated[i] = replacement;
+                node.children = updated;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param sample any key below the node
+     * @param depth  the depth of the node's new parent
+     * @return a copy of the node that branches off its new parent at the given depth;
+     * must be called while holding the lock of the node
+     */
+    private static Node copy(Node node, String sample, int depth) {
+        char label = sample.length() > depth ? sample.charAt(depth) : 0;
+        if (node instanceof Leaf) {
+            return new Leaf(label, sample, ((Leaf) node).value);
+        }
+        Inner inner = (Inner) node;
+        return new Inner(label, inner.depth, inner.leaf, inner.children);
+    }
+
+    @Override
+    public boolean remove(String key, VersionSet versions) {
+        if (versions == null) {
+            return false;
+        }
+        while (true) {
+            Inner grandparent = null;
+            Inner parent = null;
+            Node node = root;
+            while (node instanceof Inner) {
+                Inner inner = (Inner) node;
+                grandparent = parent;
+                parent = inner;
+                if (key.length() <= inner.depth) {
+                    node = key.length() == inner.depth ? inner.leaf : null;
+                    break;
+                }
+                node = child(inner.children, key.charAt(inner.depth));
+            }
+            Leaf leaf = (Leaf) node;
+            if (leaf == null || !leaf.key.equals(key)) {
+                return false;
+            }
+
+            Boolean removed;
+            if (grandparent == null) {
+                removed = unlink(parent, leaf, versions, null);
+            } else {
+                synchronized (grandparent) {
+                    removed = grandparent.replaced || child(grandparent.children, parent.label) != parent
+                            ? null : unlink(parent, leaf, versions, grandparent);
+                }
+            }
+            if (removed != null) {
+                return removed;
+            }
+        }
+    }
+
+    /**
+     * Removes the leaf from its parent, if it holds the given chain, and if the parent
+     * is left with a single entry, replaces the parent by that entry in the
+     * grandparent, whose lock must be held.
+     *
+     * @param grandparent null, if the parent is the root
+     * @return whether the leaf has been removed, null if the parent or the leaf have
+     * changed concurrently
+     */
+    private static Boolean unlink(Inner parent, Leaf leaf, VersionSet versions, Inner grandparent) {
+        synchronized (parent) {
+            Node[] children = parent.children;
+            int i = parent.leaf == leaf ? -1 : search(children, leaf.label);
+            if (parent.replaced || (i < 0 ? parent.leaf != leaf : children[i] != leaf)) {
+                return null;
+            }
+            synchronized (leaf) {
+                if (leaf.value != versions) {
+                    return false;
+                }
+                leaf.value = null;
+                leaf.replaced = true;
+                if (i < 0) {
+                    parent.leaf = null;
+                } else {
+                    children = remove(children, i);
+                    parent.children = children;
+                }
+                if (grandparent == null || (parent.leaf == null ? children.length : children.length + 1) > 1) {
+                    return true;
+                }
+
+                // the remaining entry takes the place of the parent
+                Node remaining = parent.leaf != null ? parent.leaf : children[0];
+                synchronized (remaining) {
+                    Node[] siblings = grandparent.children;
+                    int j = search(siblings, parent.label);
+                    String sample = remaining instanceof Leaf
+                            ? ((Leaf) remaining).key : firstLeaf((Inner) remaining).key;
+                    Node[] updated = siblings.clone();
+                    updated[j] = copy(remaining, sample, grandparent.depth);
+                    remaining.replaced = true;
+                    parent.replaced = true;
+                    grandparent.children = updated;
+                }
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, VersionSet>> entries(String key, boolean asc) {
+        return new Cursor(root, key, asc);
+    }
+
+    @Override
+    public KeyIndex copy() {
+        return new RadixTree((Inner) copy(root));
+    }
+
+    private static Node copy(Node node) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            return new Leaf(leaf.label, leaf.key, leaf.value);
+        }
+        Inner inner = (Inner) node;
+        Node[] children = inner.children.clone();
+        for (int i = 0; i < children.length; i++) {
+            children[i] = copy(children[i]);
+        }
+        return new Inner(inner.label, inner.depth, inner.leaf == null ? null : (Leaf) copy(inner.leaf), children);
+    }
+
+    /**
+     * @return the leaf of the smallest key below the node, null if the node is an
+     * empty root
+     */
+    private static Leaf firstLeaf(Inner node) {
+        while (true) {
+            Leaf leaf = node.leaf;
+            if (leaf != null) {
+                return leaf;
+            }
+            Node[] children = node.children;
+            if (children.length == 0) {
+                return null;
+            }
+            if (children[0] instanceof Leaf) {
+                return (Leaf) children[0];
+            }
+            node = (Inner) children[0];
+        }
+    }
+
+    /**
+     * @return the number of leading chars the keys share
+     */
+    private static int match(String key, String other) {
+        int length = Math.min(key.length(), other.length());
+        int i = 0;
+        while (i < length && key.charAt(i) == other.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static Node child(Node[] children, char label) {
+        int i = search(children, label);
+        return i < 0 ? null : children[i];
+    }
+
+    /**
+     * @return the index of the child with the label or (-(insertion point) - 1), if
+     * there is no such child
+     */
+    private static int search(Node[] children, char label) {
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char current = children[mid].label;
+            if (current < label) {
+                low = mid + 1;
+            } else if (current > label) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static Node[] insert(Node[] children, int index, Node child) {
+        Node[] inserted = new Node[children.length + 1];
+        System.arraycopy(children, 0, inserted, 0, index);
+        inserted[index] = child;
+        System.arraycopy(children, index, inserted, index + 1, children.length - index);
+        return inserted;
+    }
+
+    private static Node[] remove(Node[] children, int index) {
+        Node[] removed = new Node[children.length - 1];
+        System.arraycopy(children, 0, removed, 0, index);
+        System.arraycopy(children, index + 1, removed, index, removed.length - index);
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        Iterator<Map.Entry<String, VersionSet>> entries = entries(null, true);
+        while (entries.hasNext()) {
+            builder.append(entries.next());
+            if (entries.hasNext()) {
+                builder.append(", ");
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * A node that is being visited by a {@link Cursor}; a leaf is visited as a node
+     * without children.
+     */
+    private static final class Frame {
+        /** the key that ends at the node */
+        final Leaf leaf;
+        /** the children of the node when it has been reached */
+        final Node[] children;
+        /** the next child to visit */
+        int next;
+        /** whether the key that ends at the node still has to be visited */
+        boolean pending;
+
+        Frame(Leaf leaf, Node[] children, int next, boolean pending) {
+            this.leaf = leaf;
+            this.children = children;
+            this.next = next;
+            this.pending = pending;
+        }
+    }
+
+    /**
+     * Depth-first traversal of the tree. In ascending order, the key that ends at a
+     * node comes before the keys of its children, as it is a prefix of them; in
+     * descending order it comes after them.
+     */
+    private static final class Cursor extends AbstractIterator<Map.Entry<String, VersionSet>> {
+
+        private final boolean asc;
+        private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+
+        Cursor(Inner root, String from, boolean asc) {
+            this.asc = asc;
+            if (from == null) {
+                pushAll(root);
+            } else {
+                seek(root, from);
+            }
+        }
+
+        /**
+         * Pushes the nodes on the path to the given key, so that the traversal starts
+         * at the key.
+         */
+        private void seek(Node node, String from) {
+            String sample = node instanceof Leaf ? ((Leaf) node).key : null;
+            int depth = node instanceof Leaf ? sample.length() : ((Inner) node).depth;
+            if (depth > 0 && sample == null) {
+                sample = firstLeaf((Inner) node).key;
+            }
+            int matched = sample == null ? 0 : Math.min(match(sample, from), depth);
+            if (matched < depth) {
+                // the keys of the node either are all greater or all smaller than the key
+                boolean greater = matched == from.length() || sample.charAt(matched) > from.charAt(matched);
+                if (greater == asc) {
+                    pushAll(node);
+                }
+                return;
+            }
+
+            if (node instanceof Leaf) {
+                // the key of the leaf is the given key or a prefix of it, which is smaller
+                if (depth == from.length() || !asc) {
+                    pushAll(node);
+                }
+                return;
+            }
+            Inner inner = (Inner) node;
+            Leaf leaf = inner.leaf;
+            Node[] children = inner.children;
+            if (depth == from.length()) {
+                // the keys of the children are greater than the key that ends at the node
+                stack.push(new Frame(leaf, children, asc ? 0 : -1, true));
+                return;
+            }
+            // the key that ends at the node is smaller than the given key
+            int i = search(children, from.charAt(depth));
+            int child = i >= 0 ? i : -i - 1;
+            if (asc) {
+                stack.push(new Frame(leaf, children, i >= 0 ? i + 1 : child, false));
+            } else {
+                stack.push(new Frame(leaf, children, child - 1, true));
+            }
+            if (i >= 0) {
+                seek(children[i], from);
+            }
+        }
+
+        private void pushAll(Node node) {
+            if (node instanceof Leaf) {
+                stack.push(new Frame((Leaf) node, NO_CHILDREN, asc ? 0 : -1, true));
+                return;
+            }
+            Inner inner = (Inner) node;
+            Node[] children = inner.children;
+            stack.push(new Frame(inner.leaf, children, asc ? 0 : children.length - 1, true));
+        }
+
+        @Override
+        protected Map.Entry<String, VersionSet> computeNext() {
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (asc) {
+                    if (frame.pending) {
+                        frame.pending = false;
+                        Map.Entry<String, VersionSet> entry = entry(frame.leaf);
+                        if (entry != null) {
+                            return entry;
+                        }
+                    } else if (frame.next < frame.children.length) {
+                        pushAll(frame.children[frame.next++]);
+                    } else {
+                        stack.pop();
+                    }
+                } else {
+                    if (frame.next >= 0) {
+                        pushAll(frame.children[frame.next--]);
+                    } else {
+                        stack.pop();
+                        Map.Entry<String, VersionSet> entry = frame.pending ? entry(frame.leaf) : null;
+                        if (entry != null) {
+                            return entry;
+                        }
+                    }
+                }
+            }
+            return endOfData();
+        }
+
+        private static Map.Entry<String, VersionSet> entry(Leaf leaf) {
+            VersionSet value = leaf == null ? null : leaf.value;
+            return value == null ? null : Maps.immutableEntry(leaf.key, value);
+        }
+    }
+}
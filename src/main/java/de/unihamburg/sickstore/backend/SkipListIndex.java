@@ -0,0 +1,88 @@
+package de.unihamburg.sickstore.backend;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@link KeyIndex} that serves point operations from a hash index, so they take
+ * constant time, and scans from a {@link ConcurrentSkipListMap}, whose updates of
+ * different keys never contend. The hash index is authoritative: whenever it
+ * changes the chain of a key, that chain is copied to the skip list afterwards.
+ */
+class SkipListIndex implements KeyIndex {
+
+    private final ConcurrentHashMap<String, VersionSet> chains;
+    private final ConcurrentSkipListMap<String, VersionSet> ordered;
+
+    SkipListIndex() {
+        this.chains = new ConcurrentHashMap<>();
+        this.ordered = new ConcurrentSkipListMap<>();
+    }
+
+    private SkipListIndex(SkipListIndex other) {
+        this.chains = new ConcurrentHashMap<>(other.chains);
+        this.ordered = new ConcurrentSkipListMap<>(other.ordered);
+    }
+
+    @Override
+    public VersionSet get(String key) {
+        return chains.get(key);
+    }
+
+    @Override
+    public VersionSet putIfAbsent(String key, VersionSet versions) {
+        VersionSet existing = chains.putIfAbsent(key, versions);
+        if (existing == null) {
+            index(key);
+        }
+        return existing;
+    }
+
+    @Override
+    public void put(String key, VersionSet versions) {
+        chains.put(key, versions);
+        index(key);
+    }
+
+    @Override
+    public boolean remove(String key, VersionSet versions) {
+        if (chains.remove(key, versions)) {
+            index(key);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copies the current chain of the key from the hash index to the skip list.
+     * The function is evaluated again if the key is indexed concurrently, so the
+     * chain that is indexed last is always the current one.
+     */
+    private void index(String key) {
+        ordered.compute(key, (k, indexed) -> chains.get(k));
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, VersionSet>> entries(String key, boolean asc) {
+        NavigableMap<String, VersionSet> cursor;
+        if (key == null) {
+            cursor = asc ? ordered : ordered.descendingMap();
+        } else {
+            cursor = asc ? ordered.tailMap(key, true) : ordered.headMap(key, true).descendingMap();
+        }
+        return cursor.entrySet().iterator();
+    }
+
+    @Override
+    public KeyIndex copy() {
+        return new SkipListIndex(this);
+    }
+
+    @Override
+    public String toString() {
+        return ordered.toString();
+    }
+}
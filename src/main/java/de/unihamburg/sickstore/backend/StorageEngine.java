@@ -0,0 +1,109 @@
+package de.unihamburg.sickstore.backend;
+
+import de.unihamburg.sickstore.backend.anomaly.staleness.StalenessMap;
+import de.unihamburg.sickstore.database.Node;
+import de.unihamburg.sickstore.database.messages.exception.DeleteException;
+import de.unihamburg.sickstore.database.messages.exception.InsertException;
+import de.unihamburg.sickstore.database.messages.exception.UpdateException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stores the versions of all tables and serves them with the staleness of the
+ * reading node. The engine of a {@link QueryHandler} is configured under
+ * queryHandler.store and created by the {@link de.unihamburg.sickstore.config.InstanceFactory}.
+ *
+ * A table of null denotes the default table. Stored versions are frozen, so that
+ * reads can hand them out without copying.
+ */
+public interface StorageEngine {
+
+    /**
+     * Reads the most recent version of the given key that is visible for the node.
+     *
+     * @param columns the columns to read or null to read all columns
+     * @return the version or {@link Version#NULL}, if there is none
+     */
+    Version get(String table, Node node, String key, Set<String> columns, long timestamp, boolean logStaleness);
+
+    /**
+     * Reads up to range keys starting at the given key (inclusive); keys without a
+     * visible version are skipped.
+     */
+    List<Version> getRange(String table, Node node, String key, int range, boolean asc, Set<String> columns,
+                           long timestamp, boolean logStaleness);
+
+    void insert(String table, Node node, String key, Version version) throws InsertException;
+
+    void update(String table, Node node, String key, Version version) throws UpdateException;
+
+    /**
+     * Stores the given version regardless of whether the key exists.
+     */
+    void upsert(String table, Node node, String key, Version version);
+
+    /**
+     * Deletes the given key by storing a null version.
+     *
+     * @return the null version
+     */
+    Version delete(String table, Node node, String key, StalenessMap visibility, long timestamp)
+            throws DeleteException;
+
+    /**
+     * Loads many versions at once, the keys are taken from the versions.
+     *
+     * @param checkExistence if true, versions of existing keys are skipped; otherwise
+     *                       they are added as most recent versions
+     * @return the number of loaded versions
+     */
+    int bulkLoad(String table, List<Version> versions, boolean checkExistence);
+
+    /**
+     * Stores the given version without any check, e.g. when replaying a journal.
+     */
+    void insertOrUpdate(String table, String key, Version version);
+
+    /**
+     * Takes a checkpoint of all tables, which {@link #rollback()} returns to. Writes
+     * must not happen concurrently.
+     */
+    void checkpoint();
+
+    /**
+     * Restores the last checkpoint. Writes must not happen concurrently.
+     *
+     * @return false, if there is no checkpoint
+     */
+    boolean rollback();
+
+    /**
+     * Removes all tables.
+     */
+    void clear();
+
+    /**
+     * Garbage collects versions that can no longer be read.
+     */
+    void prune();
+
+    /**
+     * Writes all tables with the version chains and visibility of their keys to
+     * the given file.
+     *
+     * @param nodes the nodes the visibility is stored for
+     */
+    void writeSnapshot(Path file, Collection<Node> nodes) throws IOException;
+
+    /**
+     * Restores a snapshot that has been written by {@link #writeSnapshot(Path, Collection)}.
+     *
+     * @param nodes the nodes the visibility is restored for, matched by name
+     * @return the number of restored keys
+     */
+    int restoreSnapshot(Path file, Collection<Node> nodes) throws IOException;
+}
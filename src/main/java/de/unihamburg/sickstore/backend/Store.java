@@ -3,41 +3,75 @@
  */
 package de.unihamburg.sickstore.backend;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import de.unihamburg.sickstore.backend.anomaly.staleness.StalenessMap;
+import de.unihamburg.sickstore.backend.offheap.SlabAllocator;
 import de.unihamburg.sickstore.backend.timer.SystemTimeHandler;
-import de.unihamburg.sickstore.database.Node;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import de.unihamburg.sickstore.backend.timer.TimeHandler;
-
+import de.unihamburg.sickstore.database.Node;
 import de.unihamburg.sickstore.database.messages.exception.DeleteException;
 import de.unihamburg.sickstore.database.messages.exception.InsertException;
 import de.unihamburg.sickstore.database.messages.exception.UpdateException;
 
 /**
  * 
- * This class is responsible for introducing data-centric staleness by serving
- * stale data to the server nodes. </br> To this end, all nodes have to supply
- * the {@link Store} instance with a reference to themselves, so that they get
- * their corresponding degree of staleness.
+ * The tables of the database. Every {@link Table} has its own index and
+ * statistics, so keys of different tables never collide, scans never cross
+ * table boundaries and writes to one table never contend with another one.
+ * </br> Tables are created on their first use; dropping or clearing a table
+ * takes constant time and does not touch any other table. Requests that are
+ * processed concurrently may still see the previous table.
+ * </br> This is the default {@link StorageEngine}, which keeps all data in memory.
  * 
  * @author Wolfram Wingerath
  * 
  */
-public class Store {
+public class Store implements StorageEngine {
 
-	private static final Logger logStaleness = LoggerFactory
-			.getLogger("staleness");
+	/** the table of requests that do not name one */
+	public static final String DEFAULT_TABLE = "";
+
+	/** keys are kept in a hash index for point operations and a skip list for scans */
+	public static final String SKIP_LIST_INDEX = "skipList";
+
+	/** keys are only kept in a radix tree, which takes less memory per key but serves point operations slower */
+	public static final String RADIX_TREE_INDEX = "radixTree";
 
 	private TimeHandler timeHandler = new SystemTimeHandler();
 
-	private TreeMap<String, VersionSet> values = new TreeMap<>();
+	/** allocates the columns of tables off heap; null to keep them on heap */
+	private volatile SlabAllocator slabs;
+
+	/** the reads in progress on all tables, which pruning must not affect */
+	private final InFlightReads inFlightReads = new InFlightReads();
+
+	/** creates the key indexes of tables */
+	private volatile Supplier<KeyIndex> indexes = SkipListIndex::new;
+
+	private volatile ConcurrentHashMap<String, Table> tables = new ConcurrentHashMap<>();
+
+	/** the tables as of the last checkpoint; null if there is none */
+	private Map<String, Table> checkpoint;
+
+	/**
+	 * @param config may choose the index of the tables, see {@link #setIndex(String)}
+	 */
+	public static Store newInstanceFromConfig(Map<String, Object> config) {
+		Store store = new Store();
+		store.setIndex((String) config.getOrDefault("index", SKIP_LIST_INDEX));
+		return store;
+	}
 
 	public Store() {
 	}
@@ -47,243 +81,240 @@ public class Store {
 	}
 
 	/**
-	 * Clears the Datastore from all data
-	 * 
+	 * Keeps the columns of all tables that are created from now on in slabs of the
+	 * given allocator, see {@link SlabAllocator}.
+	 *
+	 * @param slabs the allocator or null to keep the columns on heap
 	 */
-	public void clear() {
-		values.clear();
-		System.gc();
+	public void setSlabAllocator(SlabAllocator slabs) {
+		this.slabs = slabs;
 	}
 
-	public void delete(Node node, String key, StalenessMap visibility,
-			long timestamp) throws DeleteException {
-		Version alreadyExisting = get(node, key, timestamp, false);
-		if (alreadyExisting.isNull()) {
-			throw new DeleteException(
-					"Value cannot be deleted, because there is no value under key \""
-							+ key + "\".");
-		} else {
-			insertOrUpdate(key, new Version(key, node, timeHandler.getCurrentTime(), visibility, true));
-		}
+	public SlabAllocator getSlabAllocator() {
+		return slabs;
 	}
 
 	/**
-	 * Get a data item with all columns.
+	 * Chooses the key index of all tables created from now on.
+	 *
+	 * @param index {@link #SKIP_LIST_INDEX} or {@link #RADIX_TREE_INDEX}
 	 */
-	public synchronized Version get(Node node, String key, long timestamp, boolean logStaleness) {
-		return get(node, key, (Set<String>) null, timestamp, logStaleness);
+	public void setIndex(String index) {
+		if (SKIP_LIST_INDEX.equals(index)) {
+			indexes = SkipListIndex::new;
+		} else if (RADIX_TREE_INDEX.equals(index)) {
+			indexes = RadixTree::new;
+		} else {
+			throw new IllegalArgumentException("Unknown index " + index);
+		}
 	}
 
 	/**
-	 * Get a data item and only read the specific columns (or null for all).
+	 * Returns the table with the given name and creates it, if it does not exist.
 	 *
-	 * @param node          the responseId of the reading server
-	 * @param key             the requested key
-	 * @param columns         set which cointans only specific columns to read (or null to read all)
-	 * @param timestamp	      time at which the request is executed
-	 * @param logStaleness    to log or not to log staleness?
-	 * @return the read version
+	 * @param name the name of the table, null denotes the {@link #DEFAULT_TABLE}
 	 */
-	public synchronized Version get(Node node, String key,
-			Set<String> columns, long timestamp, boolean logStaleness) {
-		if (key == null) {
-			throw new NullPointerException("Key must not be null!");
-		}
-
-		VersionSet versions = getVersionSet(key);
-		Version version = Version.NULL;
-		Version versionMostRecent = Version.NULL;
-		int versionStaleness = 0;
-		// find the version that was up-to-date (moss
-		if (versions != null) {
-			versionMostRecent = versions.get(0);
-			for (int i = 0; i < versions.size(); i++) {
-				version = versions.get(i);
-				if (visibleSince(node, version) <= timestamp) {
-					versionStaleness = i;
-					break;
-				} else {
-					version = Version.NULL;
-				}
-			}
-		}
-
-		// log staleness informations for ClientRequestRead only
-		if (logStaleness && version != Version.NULL) {
-			if (version == versionMostRecent) {
-				long timeSinceLastUpdate = timestamp - version.getWrittenAt();
-				Store.logStaleness.info("key;" + key
-						+ ";staleness in versions;" + versionStaleness
-						+ ";staleness in ms;0" + ";read-after-write lag;"
-						+ timeSinceLastUpdate);
-
-			} else {
-				Store.logStaleness.info("key;"
-						+ key
-						+ ";staleness in versions;"
-						+ versionStaleness
-						+ ";staleness in ms;"
-						+ (timestamp - versionMostRecent.getWrittenAt()
-						+ ";read-after-write lag;" + -1));
-			}
+	public Table getTable(String name) {
+		if (name == null) {
+			name = DEFAULT_TABLE;
 		}
-
-		if (!version.isNull()) {
-			try {
-				return version.clone(columns);
-			} catch (CloneNotSupportedException e) {
-				e.printStackTrace();
-			}
+		Table table = tables.get(name);
+		if (table == null) {
+			table = tables.computeIfAbsent(name, created -> new Table(created, timeHandler, slabs, indexes, inFlightReads));
 		}
-		return Version.NULL;
+		return table;
 	}
 
 	/**
-	 * Get a specific data item but only with the value of a single column.
+	 * @return the table with the given name or null, if it does not exist
 	 */
-	public synchronized Version get(Node node, String key, String column,
-			long timestamp, boolean logStaleness) {
-		if (column == null) {
-			throw new IllegalArgumentException("Column must not be null!");
-		}
+	public Table findTable(String name) {
+		return tables.get(name == null ? DEFAULT_TABLE : name);
+	}
 
-		Set<String> columns = new HashSet<String>();
-		columns.add(column);
+	public Collection<Table> getTables() {
+		return Collections.unmodifiableCollection(tables.values());
+	}
 
-		return get(node, key, columns, timestamp, logStaleness);
+	/**
+	 * Drops the given table with all of its keys.
+	 *
+	 * @return false, if there is no such table
+	 */
+	public boolean dropTable(String name) {
+		return tables.remove(name == null ? DEFAULT_TABLE : name) != null;
 	}
 
 	/**
-	 * Read a range of data items.
+	 * Removes all keys of the given table by replacing it with an empty one, so
+	 * that a checkpoint of the table stays intact.
 	 *
-	 * @param node
-	 * @param key
-	 * @param range
-	 * @param asc
-	 * @param columns
-	 * @param timestamp
-	 * @return
+	 * @return false, if there is no such table
 	 */
-	public synchronized List<Version> getRange(Node node, String key,
-			int range, boolean asc, Set<String> columns, long timestamp) {
-		if (key == null) {
-			throw new IllegalArgumentException("Key must not be null!");
+	public boolean clearTable(String name) {
+		String table = name == null ? DEFAULT_TABLE : name;
+		return tables.replace(table, new Table(table, timeHandler, slabs, indexes, inFlightReads)) != null;
+	}
+
+	@Override
+	public Version get(String table, Node node, String key, Set<String> columns, long timestamp,
+			boolean logStaleness) {
+		Table found = findTable(table);
+		if (found == null) {
+			return Version.NULL;
 		}
-		if (range < 1) {
-			throw new IllegalArgumentException(
-					"Range must be greater than or equal to 1!");
+		return found.get(node, key, columns, timestamp, logStaleness);
+	}
+
+	@Override
+	public List<Version> getRange(String table, Node node, String key, int range, boolean asc,
+			Set<String> columns, long timestamp, boolean logStaleness) {
+		Table found = findTable(table);
+		if (found == null) {
+			return Collections.emptyList();
 		}
+		return found.getRange(node, key, range, asc, columns, timestamp, logStaleness);
+	}
 
-		List<Version> versions = new ArrayList<Version>(range);
-		String nextKey = key;
-		Version version = null;
+	@Override
+	public void insert(String table, Node node, String key, Version version) throws InsertException {
+		getTable(table).insert(node, key, version);
+	}
 
-		do {
-			version = get(node, nextKey, columns, timestamp, true);
-			if (!version.isNull()) {
-				versions.add(version);
-			}
-		} while (range > versions.size() && (
-			   (asc && (nextKey = higherKey(nextKey)) != null) ||
-			   (!asc && (nextKey = lowerKey(nextKey)) != null)
-		));
+	@Override
+	public void update(String table, Node node, String key, Version version) throws UpdateException {
+		getTable(table).update(node, key, version);
+	}
+
+	@Override
+	public void upsert(String table, Node node, String key, Version version) {
+		getTable(table).upsert(node, key, version);
+	}
+
+	@Override
+	public Version delete(String table, Node node, String key, StalenessMap visibility, long timestamp)
+			throws DeleteException {
+		return getTable(table).delete(node, key, visibility, timestamp);
+	}
 
-		return versions;
+	@Override
+	public int bulkLoad(String table, List<Version> versions, boolean checkExistence) {
+		return getTable(table).bulkLoad(versions, checkExistence);
 	}
 
-	private synchronized VersionSet getVersionSet(String key) {
-		return values.get(key);
+	@Override
+	public void insertOrUpdate(String table, String key, Version version) {
+		getTable(table).insertOrUpdate(key, version);
 	}
 
 	/**
-	 * Returns the least key strictly greater than the given key, or null if
-	 * there is no such key.
-	 *
-	 * @param key
-	 * @return
+	 * Clears the Datastore from all data
+	 * 
 	 */
-	private synchronized String higherKey(String key) {
-		return values.higherKey(key);
+	@Override
+	public synchronized void clear() {
+		tables = new ConcurrentHashMap<>();
+		checkpoint = null;
+		System.gc();
 	}
 
-	public void insert(Node node, String key, Version version)
-			throws InsertException {
-		long timestamp = version.getWrittenAt();
-		Version alreadyExisting = get(node, key, timestamp, false);
-		if (alreadyExisting.isNull()) {
-			insertOrUpdate(key, version);
-		} else {
-			throw new InsertException(
-					"Value cannot be stored, because there already is a value under key \""
-							+ key + "\".");
+	/**
+	 * Takes a checkpoint of all tables, see {@link Table#checkpoint()}. Writes must
+	 * not happen concurrently.
+	 */
+	@Override
+	public synchronized void checkpoint() {
+		for (Table table : tables.values()) {
+			table.checkpoint();
 		}
+		checkpoint = new HashMap<>(tables);
 	}
 
 	/**
-	 * Stores the given entry value under the given key and timestamp.
-	 * 
-	 * @param key
-	 * @param value
+	 * Restores the tables of the last checkpoint, i.e. tables that have been created
+	 * since are dropped again and dropped ones are restored. Writes must not happen
+	 * concurrently.
+	 *
+	 * @return false, if there is no checkpoint
 	 */
-	public synchronized void insertOrUpdate(String key, Version value) {
-		VersionSet entrySet = values.get(key);
-
-		if (entrySet == null) {
-			entrySet = new VersionSet();
+	@Override
+	public synchronized boolean rollback() {
+		if (checkpoint == null) {
+			return false;
+		}
+		ConcurrentHashMap<String, Table> restored = new ConcurrentHashMap<>(checkpoint);
+		for (Table table : restored.values()) {
+			table.rollback();
+		}
+		tables = restored;
+		return true;
+	}
 
-			values.put(key, entrySet);
+	/**
+	 * Garbage collects the version chains of all tables and afterwards compacts the
+	 * slabs whose columns have mostly been dropped, see {@link SlabAllocator}.
+	 */
+	@Override
+	public void prune() {
+		for (Table table : tables.values()) {
+			table.prune();
+		}
+		SlabAllocator slabs = this.slabs;
+		if (slabs != null) {
+			compact(slabs);
 		}
-		entrySet.add(0, value);
 	}
 
 	/**
-	 * Calculates the timestamp when a server can see a specific version.
-	 * 
-	 * @param node
-	 *            a server ID
-	 * @param version
-	 * @return
+	 * Moves the columns of all versions out of sparse slabs of the given allocator,
+	 * so that these slabs can be released. Versions that are written concurrently
+	 * are never allocated in such slabs.
 	 */
-	public long visibleSince(Node node, Version version) {
-		StalenessMap stalenessWindows = version.getVisibility();
-		long writeTimestamp = version.getWrittenAt();
-		Long staleness = stalenessWindows.get(node);
-		if (staleness == null) {
-			return -1l;
-		} else {
-			long visibleSince = writeTimestamp + staleness;
+	private synchronized void compact(SlabAllocator slabs) {
+		Set<Table> stored = Collections.newSetFromMap(new IdentityHashMap<>());
+		stored.addAll(tables.values());
+		if (checkpoint != null) {
+			stored.addAll(checkpoint.values());
+		}
 
-			return visibleSince;
+		SlabAllocator.Compaction compaction = slabs.startCompaction(SlabAllocator.DEFAULT_MIN_LIVE_RATIO);
+		for (Table table : stored) {
+			table.forEachVersion(version -> version.markOffHeap(compaction));
+		}
+		if (compaction.select()) {
+			for (Table table : stored) {
+				table.forEachVersion(version -> version.relocate(compaction));
+			}
 		}
 	}
 
 	/**
-	 * Returns the greatest key strictly less than the given key, or null if
-	 * there is no such key.
-	 * 
-	 * 
-	 * @param key
-	 * @return
+	 * Writes all tables with the version chains and visibility of their keys to
+	 * the given file. Writes that happen concurrently may or may not be contained.
+	 *
+	 * @param file
+	 * @param nodes the nodes the visibility is stored for
 	 */
-	private synchronized String lowerKey(String key) {
-		return values.lowerKey(key);
+	@Override
+	public void writeSnapshot(Path file, Collection<Node> nodes) throws IOException {
+		StoreSnapshot.write(tables.values(), nodes, file);
 	}
 
+	/**
+	 * Restores a snapshot that has been written by
+	 * {@link #writeSnapshot(Path, Collection)}. Existing keys are replaced.
+	 *
+	 * @param file
+	 * @param nodes the nodes the visibility is restored for, matched by name
+	 * @return the number of restored keys
+	 */
 	@Override
-	public String toString() {
-		return values.toString();
+	public int restoreSnapshot(Path file, Collection<Node> nodes) throws IOException {
+		return StoreSnapshot.read(this, nodes, file);
 	}
 
-	public void update(Node node, String key, Version version)
-			throws UpdateException {
-		Version alreadyExisting = get(node, key, version.getWrittenAt(),
-				false);
-		if (alreadyExisting.isNull()) {
-			throw new UpdateException(
-					"Value cannot be updated, because there is no value under key \""
-							+ key + "\".");
-		} else {
-			insertOrUpdate(key, version);
-		}
+	@Override
+	public String toString() {
+		return tables.values().toString();
 	}
 }
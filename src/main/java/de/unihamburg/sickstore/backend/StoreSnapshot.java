@@ -0,0 +1,262 @@
+package de.unihamburg.sickstore.backend;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.Output;
+import de.unihamburg.sickstore.backend.anomaly.staleness.StalenessMap;
+import de.unihamburg.sickstore.database.Node;
+import de.unihamburg.sickstore.kryo.KryoMessageRegistrar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of all tables of a {@link Store} with the version chains and
+ * visibility of their keys. Nodes are stored by name, as their ordinals are only
+ * valid within a single process.
+ *
+ * The file starts with a header (magic number, format version and node names)
+ * followed by blocks of keys, each prefixed with its length. The keys of a table
+ * follow the name of the table. A block is at most a
+ * few MB, so that restoring only ever maps one block at a time and files larger
+ * than 2 GB can be read.
+ */
+class StoreSnapshot {
+
+    private static final int MAGIC = 0x5331434B;
+    private static final int FORMAT_VERSION = 3;
+
+    /** tags of the entries of a block */
+    private static final byte END_OF_BLOCK = 0;
+    private static final byte KEY = 1;
+    private static final byte TABLE = 2;
+
+    /** a block is written once it exceeds this size */
+    private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
+    private StoreSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first and then replaces the given file,
+     * so that an interrupted write never leaves a broken snapshot behind.
+     */
+    static void write(Collection<Table> tables, Collection<Node> nodes, Path file) throws IOException {
+        Kryo kryo = newKryo();
+        List<Node> nodeTable = new ArrayList<>(nodes);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output output = new Output(BLOCK_SIZE + 64 * 1024, -1);
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeVarInt(nodeTable.size(), true);
+            for (Node node : nodeTable) {
+                output.writeString(node.getName());
+            }
+            writeBlock(channel, output);
+
+            List<Version> chain = new ArrayList<>();
+            for (Table table : tables) {
+                output.writeByte(TABLE);
+                output.writeString(table.getName());
+
+                Iterator<Map.Entry<String, VersionSet>> entries = table.entries();
+                while (entries.hasNext()) {
+                    Map.Entry<String, VersionSet> entry = entries.next();
+                    chain.clear();
+                    for (Version version : entry.getValue()) {
+                        chain.add(version);
+                    }
+                    if (chain.isEmpty()) {
+                        continue;
+                    }
+
+                    output.writeByte(KEY);
+                    output.writeString(entry.getKey());
+                    output.writeVarInt(chain.size(), true);
+                    for (Version version : chain) {
+                        writeVersion(kryo, output, version, nodeTable);
+                    }
+                    if (output.position() >= BLOCK_SIZE) {
+                        output.writeByte(END_OF_BLOCK);
+                        writeBlock(channel, output);
+                    }
+                }
+            }
+            output.writeByte(END_OF_BLOCK);
+            writeBlock(channel, output);
+            // an empty block marks the end of the snapshot
+            writeBlock(channel, output);
+            channel.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores all tables of the snapshot into the given store. Nodes of the snapshot that
+     * are unknown are ignored, i.e. versions are visible for them right away.
+     *
+     * @return the number of restored keys
+     */
+    static int read(Store store, Collection<Node> nodes, Path file) throws IOException {
+        Kryo kryo = newKryo();
+        Map<String, Node> nodesByName = new HashMap<>();
+        for (Node node : nodes) {
+            nodesByName.put(node.getName(), node);
+        }
+
+        int keys = 0;
+        // private mappings need a writable channel, the file itself is never changed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = 0;
+            ByteBufferInput input = new ByteBufferInput();
+
+            MappedByteBuffer block = mapBlock(channel, position);
+            position += 4 + block.capacity();
+            input.setBuffer(block);
+            if (input.readInt() != MAGIC) {
+                throw new IOException(file + " is not a SickStore snapshot");
+            }
+            int formatVersion = input.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format " + formatVersion + " in " + file);
+            }
+            Node[] nodeTable = new Node[input.readVarInt(true)];
+            for (int i = 0; i < nodeTable.length; i++) {
+                nodeTable[i] = nodesByName.get(input.readString());
+            }
+
+            Table table = null;
+            while (true) {
+                block = mapBlock(channel, position);
+                if (block.capacity() == 0) {
+                    break;
+                }
+                position += 4 + block.capacity();
+                input.setBuffer(block);
+
+                Version[] chain = new Version[0];
+                for (byte tag = input.readByte(); tag != END_OF_BLOCK; tag = input.readByte()) {
+                    if (tag == TABLE) {
+                        table = store.getTable(input.readString());
+                        continue;
+                    }
+
+                    String key = input.readString();
+                    int length = input.readVarInt(true);
+                    if (chain.length < length) {
+                        chain = new Version[length];
+                    }
+                    for (int i = 0; i < length; i++) {
+                        chain[i] = readVersion(kryo, input, key, nodeTable);
+                    }
+
+                    // the chain has been written from the most recent to the oldest version
+                    VersionSet versions = new VersionSet(chain[length - 1]);
+                    for (int i = length - 2; i >= 0; i--) {
+                        versions.add(chain[i]);
+                    }
+                    table.restore(key, versions);
+                    keys++;
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static void writeVersion(Kryo kryo, Output output, Version version, List<Node> nodeTable) {
+        kryo.writeObject(output, version);
+        output.writeVarLong(version.writtenAtOrUnset() + 1, true);
+        output.writeVarInt(nodeTable.indexOf(version.getWrittenBy()) + 1, true);
+
+        StalenessMap visibility = version.getVisibility();
+        if (visibility == null) {
+            output.writeVarInt(0, true);
+            return;
+        }
+        int size = 0;
+        for (Node node : nodeTable) {
+            if (visibility.containsKey(node)) {
+                size++;
+            }
+        }
+        output.writeVarInt(size + 1, true);
+        for (int i = 0; i < nodeTable.size(); i++) {
+            Long staleness = visibility.get(nodeTable.get(i));
+            if (staleness != null) {
+                output.writeVarInt(i, true);
+                output.writeVarLong(staleness, false);
+            }
+        }
+    }
+
+    private static Version readVersion(Kryo kryo, ByteBufferInput input, String key, Node[] nodeTable) {
+        Version version = kryo.readObject(input, Version.class);
+        version.setKey(key);
+        long writtenAt = input.readVarLong(true) - 1;
+        int writtenBy = input.readVarInt(true) - 1;
+        if (writtenBy >= 0) {
+            version.setWrittenBy(nodeTable[writtenBy]);
+        }
+
+        int size = input.readVarInt(true) - 1;
+        if (size >= 0) {
+            StalenessMap visibility = new StalenessMap();
+            for (int i = 0; i < size; i++) {
+                Node node = nodeTable[input.readVarInt(true)];
+                long staleness = input.readVarLong(false);
+                if (node != null) {
+                    visibility.put(node, staleness);
+                }
+            }
+            version.setVisibility(visibility);
+        }
+        version.setWrittenAt(writtenAt);
+        return version.freeze();
+    }
+
+    private static void writeBlock(FileChannel channel, Output output) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN).putInt(0, output.position());
+        while (length.hasRemaining()) {
+            channel.write(length);
+        }
+        ByteBuffer block = ByteBuffer.wrap(output.getBuffer(), 0, output.position());
+        while (block.hasRemaining()) {
+            channel.write(block);
+        }
+        output.clear();
+    }
+
+    private static MappedByteBuffer mapBlock(FileChannel channel, long position) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+        while (length.hasRemaining()) {
+            if (channel.read(length, position + length.position()) < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+        }
+        // kryo temporarily modifies the buffer while reading strings, so it has to be
+        // a private (copy-on-write) mapping
+        return channel.map(FileChannel.MapMode.PRIVATE, position + 4, length.getInt(0));
+    }
+
+    private static Kryo newKryo() {
+        Kryo kryo = new Kryo();
+        KryoMessageRegistrar.register(kryo);
+        return kryo;
+    }
+}
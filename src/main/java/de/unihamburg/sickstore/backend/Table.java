@@ -0,0 +1,663 @@
+/**
+ * 
+ */
+package de.unihamburg.sickstore.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import de.unihamburg.sickstore.backend.anomaly.staleness.StalenessMap;
+import de.unihamburg.sickstore.backend.offheap.SlabAllocator;
+import de.unihamburg.sickstore.database.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import de.unihamburg.sickstore.backend.timer.TimeHandler;
+
+import de.unihamburg.sickstore.database.messages.exception.DeleteException;
+import de.unihamburg.sickstore.database.messages.exception.InsertException;
+import de.unihamburg.sickstore.database.messages.exception.UpdateException;
+
+/**
+ * 
+ * A table of the {@link Store}, which is responsible for introducing data-centric
+ * staleness by serving stale data to the server nodes. </br> To this end, all nodes
+ * have to supply the table with a reference to themselves, so that they get
+ * their corresponding degree of staleness.
+ * </br> The table is safe for concurrent use: keys are kept in a
+ * {@link KeyIndex}, which serves point operations and scans, and every key
+ * has its own lock-free {@link VersionSet}, so reads never block and writes
+ * only contend with writes to the same key.
+ * </br> Versions that can no longer be read are garbage collected: every write
+ * and every call of {@link #prune()} drops all versions that are older than
+ * the most recent version which is already visible for all nodes, as of the
+ * oldest read that is still in progress. Keys whose most recent version is a
+ * delete visible for all nodes are removed entirely.
+ * </br> {@link #checkpoint()} freezes the current keys, all later writes go to
+ * a separate index whose chains continue the checkpointed ones (copy on write).
+ * {@link #rollback()} drops that index and thereby restores the checkpoint.
+ * </br> If the table has a {@link SlabAllocator}, the columns of stored versions
+ * are kept off heap.
+ * 
+ * @author Wolfram Wingerath
+ * 
+ */
+public class Table {
+
+	private static final Logger logStaleness = LoggerFactory
+			.getLogger("staleness");
+
+	private final String name;
+
+	private final TimeHandler timeHandler;
+
+	/** allocates the columns of stored versions off heap; null to keep them on heap */
+	private final SlabAllocator slabs;
+
+	/** creates the indexes of the keys */
+	private final Supplier<KeyIndex> indexes;
+
+	/** keys written since the last checkpoint, or all keys if there is none */
+	private volatile KeyIndex values;
+
+	/** keys as of the last checkpoint, which are never written; null if there is none */
+	private volatile KeyIndex checkpoint;
+
+	/** the timestamps of the reads in progress, shared by all tables of the store */
+	final InFlightReads inFlightReads;
+
+	private final LongAdder reads = new LongAdder();
+	private final LongAdder scans = new LongAdder();
+	private final LongAdder writes = new LongAdder();
+
+	Table(String name, TimeHandler timeHandler, SlabAllocator slabs, Supplier<KeyIndex> indexes,
+			InFlightReads inFlightReads) {
+		this.name = name;
+		this.inFlightReads = inFlightReads;
+		this.timeHandler = timeHandler;
+		this.slabs = slabs;
+		this.indexes = indexes;
+		this.values = indexes.get();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of reads of single keys so far
+	 */
+	public long getReads() {
+		return reads.sum();
+	}
+
+	/**
+	 * @return the number of range reads so far
+	 */
+	public long getScans() {
+		return scans.sum();
+	}
+
+	/**
+	 * @return the number of versions written so far, including rejected writes
+	 */
+	public long getWrites() {
+		return writes.sum();
+	}
+
+	/**
+	 * Takes a checkpoint of all keys, which {@link #rollback()} returns to. The current
+	 * keys are frozen, so this takes constant time unless there is a previous checkpoint,
+	 * which the keys written since are merged into. Writes must not happen concurrently.
+	 */
+	synchronized void checkpoint() {
+		if (checkpoint == null) {
+			checkpoint = values;
+		} else {
+			KeyIndex merged = checkpoint.copy();
+			merged.putAll(values);
+			checkpoint = merged;
+		}
+		values = indexes.get();
+	}
+
+	/**
+	 * Drops all writes since the last checkpoint in constant time. Writes must not
+	 * happen concurrently.
+	 *
+	 * @return false, if there is no checkpoint
+	 */
+	synchronized boolean rollback() {
+		if (checkpoint == null) {
+			return false;
+		}
+		values = indexes.get();
+		return true;
+	}
+
+	/**
+	 * Deletes the given key by adding a null version.
+	 *
+	 * @return the null version
+	 */
+	public Version delete(Node node, String key, StalenessMap visibility,
+			long timestamp) throws DeleteException {
+		Version delete = new Version(key, node, timeHandler.getCurrentTime(), visibility, true);
+		if (!write(node, key, delete, timestamp, Boolean.TRUE)) {
+			throw new DeleteException(
+					"Value cannot be deleted, because there is no value under key \""
+							+ key + "\".");
+		}
+		return delete;
+	}
+
+	/**
+	 * Get a data item with all columns.
+	 */
+	public Version get(Node node, String key, long timestamp, boolean logStaleness) {
+		return get(node, key, (Set<String>) null, timestamp, logStaleness);
+	}
+
+	/**
+	 * Get a data item and only read the specific columns (or null for all).
+	 *
+	 * @param node          the responseId of the reading server
+	 * @param key             the requested key
+	 * @param columns         set which cointans only specific columns to read (or null to read all)
+	 * @param timestamp	      time at which the request is executed
+	 * @param logStaleness    to log or not to log staleness?
+	 * @return the read version
+	 */
+	public Version get(Node node, String key,
+			Set<String> columns, long timestamp, boolean logStaleness) {
+		if (key == null) {
+			throw new NullPointerException("Key must not be null!");
+		}
+
+		reads.increment();
+		inFlightReads.enter(timestamp);
+		try {
+			return read(node, key, getVersionSet(key), columns, timestamp, logStaleness);
+		} finally {
+			inFlightReads.exit();
+		}
+	}
+
+	/**
+	 * Reads the most recent version of the given version chain that is visible
+	 * for the given node.
+	 *
+	 * @param versions    the version chain of the key, may be null
+	 * @return the read version, projected to the given columns
+	 */
+	private Version read(Node node, String key, VersionSet versions,
+			Set<String> columns, long timestamp, boolean logStaleness) {
+		Version version = Version.NULL;
+		Version versionMostRecent = Version.NULL;
+		int versionStaleness = 0;
+		// find the most recent version that is visible for the given node
+		if (versions != null) {
+			int i = 0;
+			for (VersionSet.Entry e = versions.head(); e != null; e = e.next, i++) {
+				if (i == 0) {
+					versionMostRecent = e.version;
+				}
+				if (visibleSince(node, e.version) <= timestamp) {
+					version = e.version;
+					versionStaleness = i;
+					break;
+				}
+			}
+		}
+
+		// log staleness informations for ClientRequestRead only
+		if (logStaleness && version != Version.NULL) {
+			if (version == versionMostRecent) {
+				long timeSinceLastUpdate = timestamp - version.getWrittenAt();
+				Table.logStaleness.info("key;" + key
+						+ ";staleness in versions;" + versionStaleness
+						+ ";staleness in ms;0" + ";read-after-write lag;"
+						+ timeSinceLastUpdate);
+
+			} else {
+				Table.logStaleness.info("key;"
+						+ key
+						+ ";staleness in versions;"
+						+ versionStaleness
+						+ ";staleness in ms;"
+						+ (timestamp - versionMostRecent.getWrittenAt()
+						+ ";read-after-write lag;" + -1));
+			}
+		}
+
+		if (!version.isNull()) {
+			return version.project(columns);
+		}
+		return Version.NULL;
+	}
+
+	/**
+	 * Get a specific data item but only with the value of a single column.
+	 */
+	public Version get(Node node, String key, String column,
+			long timestamp, boolean logStaleness) {
+		if (column == null) {
+			throw new IllegalArgumentException("Column must not be null!");
+		}
+
+		return get(node, key, Collections.singleton(column), timestamp, logStaleness);
+	}
+
+	/**
+	 * Read a range of data items.
+	 *
+	 * @param node
+	 * @param key
+	 * @param range
+	 * @param asc
+	 * @param columns
+	 * @param timestamp
+	 * @return
+	 */
+	public List<Version> getRange(Node node, String key,
+			int range, boolean asc, Set<String> columns, long timestamp) {
+		return getRange(node, key, range, asc, columns, timestamp, false);
+	}
+
+	/**
+	 * Read a range of data items. The index is traversed once, starting at the
+	 * given key; as it is weakly consistent, concurrent writers are not blocked
+	 * and keys that are written during the scan may or may not be seen.
+	 *
+	 * @param node
+	 * @param key             the key to start the scan at (inclusive)
+	 * @param range           the maximum number of data items to read
+	 * @param asc             scan in ascending or descending key order
+	 * @param columns         set which cointans only specific columns to read (or null to read all)
+	 * @param timestamp       time at which the request is executed
+	 * @param logStaleness    to log or not to log staleness?
+	 * @return the read versions, data items that are not visible for the node are skipped
+	 */
+	public List<Version> getRange(Node node, String key,
+			int range, boolean asc, Set<String> columns, long timestamp,
+			boolean logStaleness) {
+		if (key == null) {
+			throw new IllegalArgumentException("Key must not be null!");
+		}
+		if (range < 1) {
+			throw new IllegalArgumentException(
+					"Range must be greater than or equal to 1!");
+		}
+
+		scans.increment();
+		List<Version> versions = new ArrayList<Version>(Math.min(range, 1024));
+		inFlightReads.enter(timestamp);
+		try {
+			Iterator<Map.Entry<String, VersionSet>> cursor = entries(key, asc);
+			while (cursor.hasNext()) {
+				Map.Entry<String, VersionSet> entry = cursor.next();
+				Version version = read(node, entry.getKey(), entry.getValue(),
+						columns, timestamp, logStaleness);
+				if (!version.isNull()) {
+					versions.add(version);
+					if (versions.size() >= range) {
+						break;
+					}
+				}
+			}
+		} finally {
+			inFlightReads.exit();
+		}
+		return versions;
+	}
+
+	VersionSet getVersionSet(String key) {
+		VersionSet versions = values.get(key);
+		if (versions == null) {
+			KeyIndex checkpoint = this.checkpoint;
+			if (checkpoint != null) {
+				versions = checkpoint.get(key);
+			}
+		}
+		return versions;
+	}
+
+	/**
+	 * @return the version chains of all keys in ascending order
+	 */
+	Iterator<Map.Entry<String, VersionSet>> entries() {
+		return entries(null, true);
+	}
+
+	/**
+	 * Adds the given version chain, e.g. when restoring a snapshot.
+	 */
+	void restore(String key, VersionSet versions) {
+		for (Version version : versions) {
+			store(version);
+		}
+		values.put(key, versions);
+	}
+
+	/**
+	 * Iterates over the version chains of all keys starting at the given key, merging
+	 * the keys written since the last checkpoint with the checkpointed ones.
+	 *
+	 * @param key the key to start at (inclusive) or null to iterate over all keys
+	 * @param asc
+	 */
+	private Iterator<Map.Entry<String, VersionSet>> entries(String key, boolean asc) {
+		Iterator<Map.Entry<String, VersionSet>> written = values.entries(key, asc);
+		KeyIndex checkpoint = this.checkpoint;
+		if (checkpoint == null) {
+			return written;
+		}
+
+		PeekingIterator<Map.Entry<String, VersionSet>> first = Iterators.peekingIterator(written);
+		PeekingIterator<Map.Entry<String, VersionSet>> second = Iterators.peekingIterator(
+				checkpoint.entries(key, asc));
+		return new AbstractIterator<Map.Entry<String, VersionSet>>() {
+			@Override
+			protected Map.Entry<String, VersionSet> computeNext() {
+				if (!first.hasNext()) {
+					return second.hasNext() ? second.next() : endOfData();
+				} else if (!second.hasNext()) {
+					return first.next();
+				}
+				int order = first.peek().getKey().compareTo(second.peek().getKey());
+				if (!asc) {
+					order = -order;
+				}
+				if (order == 0) {
+					// the written chain continues the checkpointed one
+					second.next();
+				}
+				return order <= 0 ? first.next() : second.next();
+			}
+		};
+	}
+
+	public void insert(Node node, String key, Version version)
+			throws InsertException {
+		if (!write(node, key, version, version.getWrittenAt(), Boolean.FALSE)) {
+			throw new InsertException(
+					"Value cannot be stored, because there already is a value under key \""
+							+ key + "\".");
+		}
+	}
+
+	/**
+	 * Stores the given version regardless of whether the key exists.
+	 */
+	public void upsert(Node node, String key, Version version) {
+		insertOrUpdate(key, version);
+	}
+
+	/**
+	 * Loads many versions at once, e.g. to preload a data set. The versions are
+	 * sorted by key first, so that consecutive insertions go to neighbouring
+	 * positions of the index. As for {@link #insert(Node, String, Version)}, a key
+	 * exists if the most recent version that the node which wrote the loaded
+	 * version sees at its write time is not a delete, and the check is atomic
+	 * with the write.
+	 *
+	 * @param versions       the versions to load, the keys are taken from the versions
+	 * @param checkExistence if true, versions of existing keys are skipped; otherwise
+	 *                       they are added as most recent versions
+	 * @return the number of loaded versions
+	 */
+	public int bulkLoad(List<Version> versions, boolean checkExistence) {
+		Version[] sorted = versions.toArray(new Version[versions.size()]);
+		Arrays.sort(sorted, Comparator.comparing(Version::getKey));
+
+		int loaded = 0;
+		for (Version version : sorted) {
+			String key = version.getKey();
+			if (key == null) {
+				throw new NullPointerException("Key must not be null!");
+			}
+			if (!checkExistence) {
+				insertOrUpdate(key, version);
+			} else {
+				Node node = version.getWrittenBy();
+				long timestamp = version.getWrittenAt();
+				// keys seen to exist are skipped before the version is copied off heap,
+				// the write itself checks again
+				if (exists(node, key, timestamp)
+						|| !write(node, key, version, timestamp, Boolean.FALSE)) {
+					continue;
+				}
+			}
+			loaded++;
+		}
+		return loaded;
+	}
+
+	/**
+	 * Stores the given entry value under the given key and timestamp.
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	public void insertOrUpdate(String key, Version value) {
+		write(null, key, value, -1, null);
+	}
+
+	/**
+	 * Prepends the given version to the chain of the key if the key's existence,
+	 * as seen by the given node at the given timestamp, is as expected. The check
+	 * runs against the same chain head the version is linked to, so that no
+	 * concurrent write to the key can slip in between, and nothing is copied.
+	 *
+	 * @param node      the node that checks for existence
+	 * @param timestamp the time of the check
+	 * @param mustExist true if the key must exist, false if it must not exist
+	 *                  and null if the version is stored unconditionally
+	 * @return false, if the key's existence was not as expected
+	 */
+	private boolean write(Node node, String key, Version value, long timestamp, Boolean mustExist) {
+		store(value);
+		writes.increment();
+		if (mustExist == null) {
+			return prepend(key, value, null, timestamp, null);
+		}
+		// the existence check reads the chain at the given timestamp
+		inFlightReads.enter(timestamp);
+		try {
+			return prepend(key, value, node, timestamp, mustExist);
+		} finally {
+			inFlightReads.exit();
+		}
+	}
+
+	private boolean prepend(String key, Version value, Node node, long timestamp, Boolean mustExist) {
+		while (true) {
+			KeyIndex values = this.values;
+			VersionSet entrySet = values.get(key);
+
+			if (entrySet == null) {
+				VersionSet checkpointed = checkpoint == null ? null : checkpoint.get(key);
+				if (checkpointed != null) {
+					// copy on write, the checkpointed chain itself is never changed
+					VersionSet fork = checkpointed.fork();
+					entrySet = values.putIfAbsent(key, fork);
+					if (entrySet == null) {
+						entrySet = fork;
+					}
+				} else {
+					if (Boolean.TRUE.equals(mustExist)) {
+						return false;
+					}
+					VersionSet created = new VersionSet(value);
+					entrySet = values.putIfAbsent(key, created);
+					if (entrySet == null) {
+						return true;
+					}
+				}
+			}
+
+			VersionSet.Outcome outcome = mustExist == null
+					? (entrySet.add(value) ? VersionSet.Outcome.ADDED : VersionSet.Outcome.RETIRED)
+					: entrySet.add(value, head -> exists(node, head, timestamp) == mustExist);
+			switch (outcome) {
+				case ADDED:
+					if (prune(entrySet, inFlightReads.lowWaterMark(value.getWrittenAt()))) {
+						values.remove(key, entrySet);
+					}
+					return true;
+				case REJECTED:
+					return false;
+				default:
+					// the chain has been reclaimed concurrently, start a new one
+					values.remove(key, entrySet);
+			}
+		}
+	}
+
+	/**
+	 * Prepares the given version for being stored: stored versions are shared with
+	 * readers and must not change anymore.
+	 */
+	private void store(Version version) {
+		version.freeze();
+		if (slabs != null) {
+			version.moveOffHeap(slabs);
+		}
+	}
+
+	/**
+	 * @return true, if the most recent version of the key the node can see at the
+	 * given timestamp is not a delete
+	 */
+	private boolean exists(Node node, String key, long timestamp) {
+		inFlightReads.enter(timestamp);
+		try {
+			VersionSet entrySet = getVersionSet(key);
+			return entrySet != null && exists(node, entrySet.head(), timestamp);
+		} finally {
+			inFlightReads.exit();
+		}
+	}
+
+	/**
+	 * @param head the most recent entry of a version chain
+	 * @param node the node that checks for existence, null to see all versions
+	 * @return true, if the most recent version the node can see at the given timestamp is not a delete
+	 */
+	private boolean exists(Node node, VersionSet.Entry head, long timestamp) {
+		for (VersionSet.Entry e = head; e != null; e = e.next) {
+			if (node == null || visibleSince(node, e.version) <= timestamp) {
+				return !e.version.isNull();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Garbage collects the version chains of all keys that have been written since
+	 * the last checkpoint; checkpointed chains are never changed. Versions that a
+	 * read in progress may still return are kept.
+	 */
+	public void prune() {
+		long timestamp = inFlightReads.lowWaterMark(timeHandler.getCurrentTime());
+		Iterator<Map.Entry<String, VersionSet>> entries = values.entries(null, true);
+		while (entries.hasNext()) {
+			Map.Entry<String, VersionSet> entry = entries.next();
+			if (prune(entry.getValue(), timestamp)) {
+				values.remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Passes every stored version to the given consumer once, including the versions
+	 * of the last checkpoint.
+	 */
+	void forEachVersion(Consumer<Version> consumer) {
+		KeyIndex checkpoint = this.checkpoint;
+		Iterator<Map.Entry<String, VersionSet>> entries = values.entries(null, true);
+		while (entries.hasNext()) {
+			VersionSet versions = entries.next().getValue();
+			// shared entries are visited with the checkpoint
+			VersionSet.Entry shared = checkpoint == null ? null : versions.shared();
+			for (VersionSet.Entry e = versions.head(); e != null && e != shared; e = e.next) {
+				consumer.accept(e.version);
+			}
+		}
+		if (checkpoint != null && checkpoint != values) {
+			entries = checkpoint.entries(null, true);
+			while (entries.hasNext()) {
+				for (VersionSet.Entry e = entries.next().getValue().head(); e != null; e = e.next) {
+					consumer.accept(e.version);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops all versions that are older than the most recent version which is
+	 * visible for all nodes at the given timestamp, as no node can read them
+	 * anymore. If that version is a delete and there is no newer version, the
+	 * chain is retired.
+	 *
+	 * @param versions
+	 * @param timestamp
+	 * @return true, if the chain has been retired and its key has to be removed
+	 */
+	private boolean prune(VersionSet versions, long timestamp) {
+		VersionSet.Entry head = versions.head();
+		VersionSet.Entry shared = versions.shared();
+		for (VersionSet.Entry e = head; e != null && e != shared; e = e.next) {
+			if (visibleForAllNodes(e.version, timestamp)) {
+				versions.truncateAfter(e);
+				// a forked chain must stay, as it hides the checkpointed one
+				return e == head && e.version.isNull() && shared == null && versions.retire(e);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true, if all nodes can see the given version at the given timestamp
+	 */
+	private boolean visibleForAllNodes(Version version, long timestamp) {
+		return version.visibleForAllSince() <= timestamp;
+	}
+
+	/**
+	 * Calculates the timestamp when a server can see a specific version.
+	 * 
+	 * @param node
+	 *            a server ID
+	 * @param version
+	 * @return
+	 */
+	public long visibleSince(Node node, Version version) {
+		return version.visibleSince(node);
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + values.toString();
+	}
+
+	public void update(Node node, String key, Version version)
+			throws UpdateException {
+		if (!write(node, key, version, version.getWrittenAt(), Boolean.TRUE)) {
+			throw new UpdateException(
+					"Value cannot be updated, because there is no value under key \""
+							+ key + "\".");
+		}
+	}
+}
@@ -3,33 +3,74 @@
  */
 package de.unihamburg.sickstore.backend;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
+import com.google.common.base.Predicates;
+import com.google.common.collect.Maps;
+
+import com.esotericsoftware.kryo.io.Output;
+
 import de.unihamburg.sickstore.backend.anomaly.staleness.StalenessMap;
+import de.unihamburg.sickstore.backend.offheap.OffHeapBlob;
+import de.unihamburg.sickstore.backend.offheap.SlabAllocator;
 import de.unihamburg.sickstore.database.Node;
+import de.unihamburg.sickstore.kryo.ColumnCodec;
 
 /**
+ * A version of a data item. Once a version has been written to the
+ * {@link Store} it is frozen, i.e. its columns cannot be changed anymore, so
+ * that reads can hand out the stored instance (or a projection of it) without
+ * copying or locking.
+ * </br> Columns that have been received in encoded form (see {@link ColumnCodec})
+ * stay encoded: they are serialized again by copying the encoded bytes and only
+ * decoded when they are accessed.
+ *
  * @author Wolfram Wingerath
  * 
  */
 public class Version {
 
+    private static final long[] NO_VISIBILITY = new long[0];
+
     /** a version representing the initial null value */
-    public static final Version NULL = new Version(null, null, -1, null, true);
+    public static final Version NULL = new Version(null, null, -1, null, true).freeze();
 
     /** if true, there is no value under the given key in this version */
     private boolean isNull = false;
 
-    private TreeMap<String, Object> values = new TreeMap<>();
+    /** the columns, null if they are only available in encoded form */
+    private SortedMap<String, Object> values = new TreeMap<>();
+
+    /** the encoded columns as they have been received */
+    private transient byte[] encodedValues;
+
+    /** the encoded columns, if they have been moved off heap; replaced by compactions */
+    private transient volatile OffHeapBlob offHeapValues;
+
+    /** if true, the columns of this version cannot be changed anymore */
+    private transient boolean frozen = false;
+
+    /** if true, this is the result of a single read, which keeps its decoded columns */
+    private transient boolean readView = false;
 
     /**
-     * A map from server IDs to timestamps; indicates when the version is
+     * A map from server IDs to staleness windows; indicates when the version is
      * visible for what server
      */
-    private transient StalenessMap visibility = new StalenessMap();
+    private transient StalenessMap visibility;
+
+    /**
+     * The timestamps since when the version is visible, indexed by node ordinal.
+     * Derived from the visibility and writtenAt as soon as both are known.
+     */
+    private transient long[] visibleSince = NO_VISIBILITY;
+
+    /** timestamp since when the version is visible for all nodes */
+    private transient long visibleForAllSince = -1;
 
     /**
      * Server timestamp at which this version was written.
@@ -75,11 +116,10 @@ public class Version {
         this();
         this.key = key;
         this.writtenBy = writtenBy;
-        if (visibility != null) {
-            this.visibility.putAll(visibility);
-        }
         this.isNull = isNull;
         this.writtenAt = writtenAt;
+        this.visibility = visibility;
+        updateVisibleSince();
     }
 
     @Override
@@ -88,37 +128,234 @@ public class Version {
     }
 
     public Version clone(Set<String> columns) throws CloneNotSupportedException {
-        Version clone = new Version(key, writtenBy, writtenAt, visibility);
+        Version clone = new Version(key, writtenBy, writtenAt, null);
+        if (visibility != null) {
+            clone.visibility = new StalenessMap(visibility);
+        }
+        clone.visibleSince = visibleSince;
+        clone.visibleForAllSince = visibleForAllSince;
 
-        for (String column : values.keySet()) {
-            if (columns == null || columns.contains(column)) {
-                clone.put(column, get(column));
+        for (Map.Entry<String, Object> column : values().entrySet()) {
+            if (columns == null || columns.contains(column.getKey())) {
+                clone.put(column.getKey(), column.getValue());
             }
         }
         return clone;
     }
 
+    /**
+     * Returns a view of this version that only contains the given columns. The
+     * view shares the columns of this version instead of copying them. Encoded
+     * columns are decoded at most once per view, however often it is accessed.
+     *
+     * @param columns the columns to keep or null to keep all columns
+     * @return this version, if all columns are requested and decoded, or a view
+     */
+    public Version project(Set<String> columns) {
+        if (isNull || (columns == null && values != null)) {
+            return this;
+        }
+
+        Version projection = new Version(key, writtenBy, writtenAt, null);
+        projection.visibility = visibility;
+        projection.visibleSince = visibleSince;
+        projection.visibleForAllSince = visibleForAllSince;
+        if (columns == null) {
+            // keeps the encoded columns, so that they are still copied when serialized
+            projection.values = null;
+            projection.encodedValues = encodedValues;
+            projection.offHeapValues = offHeapValues;
+            projection.readView = true;
+        } else {
+            projection.values = Maps.filterKeys(values(), Predicates.in(columns));
+        }
+        projection.frozen = frozen;
+        return projection;
+    }
+
+    /**
+     * Makes the columns of this version immutable.
+     *
+     * @return this version
+     */
+    Version freeze() {
+        if (!frozen) {
+            if (values != null) {
+                values = Collections.unmodifiableSortedMap(values);
+            }
+            frozen = true;
+        }
+        return this;
+    }
+
+    /**
+     * Moves the columns of this frozen version into an off-heap slab, so that only a
+     * handle stays on the heap. The columns are decoded again whenever they are
+     * accessed, except for serialization, which copies the encoded columns.
+     * Must be called before the version is shared with other threads.
+     */
+    void moveOffHeap(SlabAllocator allocator) {
+        if (!frozen || offHeapValues != null || isNull()) {
+            return;
+        }
+        if (encodedValues != null) {
+            offHeapValues = allocator.allocate(encodedValues, 0, encodedValues.length);
+            encodedValues = null;
+        } else {
+            Output encoded = ColumnCodec.encode(values);
+            offHeapValues = allocator.allocate(encoded.getBuffer(), 0, encoded.position());
+            values = null;
+        }
+    }
+
+    /**
+     * Counts the off-heap columns of this version as live, see {@link SlabAllocator.Compaction}.
+     */
+    void markOffHeap(SlabAllocator.Compaction compaction) {
+        OffHeapBlob blob = offHeapValues;
+        if (blob != null) {
+            compaction.mark(blob);
+        }
+    }
+
+    /**
+     * Moves the off-heap columns of this version out of a slab that is compacted.
+     * Readers that still hold the previous handle keep its slab alive.
+     */
+    void relocate(SlabAllocator.Compaction compaction) {
+        OffHeapBlob blob = offHeapValues;
+        if (blob != null) {
+            offHeapValues = compaction.move(blob);
+        }
+    }
+
+    /**
+     * @return the encoded columns, if they have been moved off heap, or null
+     */
+    public OffHeapBlob getOffHeapValues() {
+        return offHeapValues;
+    }
+
+    /**
+     * Sets the columns in encoded form, they are only decoded once they are accessed.
+     *
+     * @param encodedValues columns encoded by {@link ColumnCodec}
+     */
+    public void setEncodedValues(byte[] encodedValues) {
+        if (frozen) {
+            throw new UnsupportedOperationException("The version is frozen");
+        }
+        if (encodedValues.length == 1 && encodedValues[0] == 0) {
+            // no columns at all
+            this.values = new TreeMap<>();
+            this.encodedValues = null;
+        } else {
+            this.values = null;
+            this.encodedValues = encodedValues;
+        }
+    }
+
+    /**
+     * @return the encoded columns, if they are held in encoded form, or null
+     */
+    public byte[] getEncodedValues() {
+        return encodedValues;
+    }
+
+    /**
+     * @return the number of bytes of the encoded columns; columns that are only
+     * held decoded are encoded to find out
+     */
+    public int getEncodedLength() {
+        if (isNull) {
+            return 0;
+        } else if (offHeapValues != null) {
+            return offHeapValues.length();
+        } else if (encodedValues != null) {
+            return encodedValues.length;
+        }
+        return ColumnCodec.encode(values()).position();
+    }
+
+    private SortedMap<String, Object> values() {
+        if (values != null) {
+            return values;
+        }
+
+        OffHeapBlob blob = offHeapValues;
+        SortedMap<String, Object> decoded = blob != null
+                ? ColumnCodec.decode(blob.read(), 0, blob.length())
+                : ColumnCodec.decode(encodedValues, 0, encodedValues.length);
+        if (readView) {
+            // keeps the encoded columns as well, for serialization
+            values = Collections.unmodifiableSortedMap(decoded);
+            return values;
+        }
+        if (frozen) {
+            // stored versions stay encoded, reads decode them on a view of their own
+            return Collections.unmodifiableSortedMap(decoded);
+        }
+        // a version that can still change owns its columns
+        values = decoded;
+        encodedValues = null;
+        return values;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof Version) {
             Version otherEntry = (Version) obj;
-            return values.equals(otherEntry.getValues());
+            return values().equals(otherEntry.getValues());
         }
         return false;
     }
 
     public Object get(String column) {
-        return values.get(column);
+        return values().get(column);
     }
 
-    public synchronized Map<String, Object> getValues() {
-        return values;
+    public Map<String, Object> getValues() {
+        return values();
     }
 
     public StalenessMap getVisibility() {
         return visibility;
     }
 
+    /**
+     * Returns the timestamp since when this version is visible for the given node.
+     *
+     * @param node
+     * @return the timestamp or -1, if there is no staleness window for the node
+     */
+    public long visibleSince(Node node) {
+        int ordinal = node.getOrdinal();
+        return ordinal >= 0 && ordinal < visibleSince.length ? visibleSince[ordinal] : -1;
+    }
+
+    /**
+     * @return the timestamp since when this version is visible for all nodes
+     */
+    public long visibleForAllSince() {
+        return visibleForAllSince;
+    }
+
+    private void updateVisibleSince() {
+        if (visibility == null || writtenAt == -1) {
+            visibleSince = NO_VISIBILITY;
+            visibleForAllSince = -1;
+            return;
+        }
+
+        long[] visibleSince = visibility.toVisibleSince(writtenAt);
+        long visibleForAllSince = -1;
+        for (long timestamp : visibleSince) {
+            visibleForAllSince = Math.max(visibleForAllSince, timestamp);
+        }
+        this.visibleSince = visibleSince;
+        this.visibleForAllSince = visibleForAllSince;
+    }
+
     public long getWrittenAt() {
         if (writtenAt == -1) {
             throw new RuntimeException("writtenAt not set");
@@ -127,12 +364,19 @@ public class Version {
         return writtenAt;
     }
 
+    /**
+     * @return the timestamp at which this version was written or -1, if it is not set
+     */
+    long writtenAtOrUnset() {
+        return writtenAt;
+    }
+
     public Node getWrittenBy() {
         return writtenBy;
     }
 
     public boolean isNull() {
-        return getValues().isEmpty() || isNull;
+        return isNull || (values != null && values.isEmpty());
     }
 
     public void setWrittenBy(Node writtenBy) {
@@ -147,29 +391,32 @@ public class Version {
      * @param column
      * @param value
      */
-    public synchronized void put(String column, Object value) {
+    public void put(String column, Object value) {
         if (column == null) {
-            values.remove(value);
+            values().remove(value);
         } else {
-            values.put(column, value);
+            values().put(column, value);
         }
     }
 
-    public synchronized void remove(String column) {
+    public void remove(String column) {
         put(column, null);
     }
 
-    public synchronized void setValues(Map<String, Object> values) {
-        this.values.clear();
-        this.values.putAll(values);
+    public void setValues(Map<String, Object> values) {
+        SortedMap<String, Object> columns = values();
+        columns.clear();
+        columns.putAll(values);
     }
 
     public void setVisibility(StalenessMap visibility) {
         this.visibility = visibility;
+        updateVisibleSince();
     }
 
     public void setWrittenAt(long writtenAt) {
         this.writtenAt = writtenAt;
+        updateVisibleSince();
     }
 
     @Override
@@ -177,7 +424,7 @@ public class Version {
         if (isNull) {
             return writtenAt + ": null";
         }
-        return writtenAt + ": " + values.toString();
+        return writtenAt + ": " + values().toString();
     }
 
     public void setKey(String key) {
@@ -1,16 +1,208 @@
 /**
- * 
+ *
  */
 package de.unihamburg.sickstore.backend;
 
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Predicate;
 
 /**
+ * The version chain of a single key, ordered from the most recent to the
+ * oldest version. New versions are prepended by a compare-and-set on the head
+ * of the chain, so readers never block and writers only contend with writers
+ * of the same key.
+ *
  * @author Wolfram Wingerath
- * 
+ *
  */
-public class VersionSet extends LinkedList<Version> {
+public class VersionSet implements Iterable<Version> {
 
-    private static final long serialVersionUID = 4582092457562527088L;
+    private static final AtomicReferenceFieldUpdater<VersionSet, Entry> HEAD =
+            AtomicReferenceFieldUpdater.newUpdater(VersionSet.class, Entry.class, "head");
 
+    /** head of a chain that has been removed from the store and must not be written anymore */
+    private static final Entry RETIRED = new Entry(Version.NULL, null);
+
+    private volatile Entry head;
+
+    /**
+     * the most recent entry that is shared with a checkpoint, null if there is none;
+     * neither this entry nor any older one may be changed
+     */
+    private Entry shared;
+
+    public VersionSet() {
+    }
+
+    public VersionSet(Version version) {
+        this.head = new Entry(version, null);
+    }
+
+    /**
+     * Prepends the given version, so that it becomes the most recent one.
+     *
+     * @param version
+     * @return false, if the chain has been retired in the meantime and the version was not added
+     */
+    public boolean add(Version version) {
+        Entry current;
+        Entry entry = new Entry(version, null);
+        do {
+            current = head;
+            if (current == RETIRED) {
+                return false;
+            }
+            entry.next = current;
+        } while (!HEAD.compareAndSet(this, current, entry));
+        return true;
+    }
+
+    /**
+     * Prepends the given version if the condition holds for the current chain. The condition
+     * is evaluated against the same head the version is linked to, so no other version can be
+     * added in between; if the head changes concurrently, the condition is evaluated again.
+     *
+     * @param version
+     * @param condition evaluated with the most recent entry, which is null for an empty chain
+     * @return the outcome
+     */
+    Outcome add(Version version, Predicate<Entry> condition) {
+        Entry current;
+        Entry entry = new Entry(version, null);
+        do {
+            current = head;
+            if (current == RETIRED) {
+                return Outcome.RETIRED;
+            }
+            if (!condition.test(current)) {
+                return Outcome.REJECTED;
+            }
+            entry.next = current;
+        } while (!HEAD.compareAndSet(this, current, entry));
+        return Outcome.ADDED;
+    }
+
+    /**
+     * Creates a new chain that continues this one, so that versions can be added without
+     * changing this chain. Used to copy a checkpointed chain on its first write.
+     */
+    VersionSet fork() {
+        VersionSet fork = new VersionSet();
+        fork.head = fork.shared = head();
+        return fork;
+    }
+
+    /**
+     * @return the most recent entry that is shared with a checkpoint and must not be
+     * changed, or null if there is none
+     */
+    Entry shared() {
+        return shared;
+    }
+
+    /**
+     * Retires the chain if the given entry is still its most recent one. A retired chain
+     * is empty and rejects all further versions.
+     *
+     * @param expectedHead
+     * @return true, if the chain has been retired
+     */
+    boolean retire(Entry expectedHead) {
+        return HEAD.compareAndSet(this, expectedHead, RETIRED);
+    }
+
+    /**
+     * Drops all versions that are older than the version of the given entry.
+     *
+     * @param entry
+     */
+    void truncateAfter(Entry entry) {
+        if (entry.next != null) {
+            entry.next = null;
+        }
+    }
+
+    /**
+     * @return the most recent version or {@link Version#NULL} if there is none
+     */
+    public Version getFirst() {
+        Entry current = head();
+        return current == null ? Version.NULL : current.version;
+    }
+
+    public boolean isEmpty() {
+        return head() == null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Entry e = head(); e != null; e = e.next) {
+            size++;
+        }
+        return size;
+    }
+
+    Entry head() {
+        Entry current = head;
+        return current == RETIRED ? null : current;
+    }
+
+    @Override
+    public Iterator<Version> iterator() {
+        final Entry first = head();
+        return new Iterator<Version>() {
+            private Entry next = first;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Version next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Version version = next.version;
+                next = next.next;
+                return version;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (Entry e = head(); e != null; e = e.next) {
+            builder.append(e.version);
+            if (e.next != null) {
+                builder.append(", ");
+            }
+        }
+        return builder.append(']').toString();
+    }
+
+    enum Outcome {
+        ADDED,
+        /** the condition did not hold */
+        REJECTED,
+        /** the chain has been retired and must be replaced */
+        RETIRED
+    }
+
+    /**
+     * A link of the chain; the chain behind an entry is only ever cut off,
+     * never changed otherwise, once the entry has been published.
+     */
+    static final class Entry {
+        final Version version;
+        volatile Entry next;
+
+        Entry(Version version, Entry next) {
+            this.version = version;
+            this.next = next;
+        }
+    }
 }
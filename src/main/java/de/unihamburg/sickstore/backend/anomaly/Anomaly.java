@@ -6,7 +6,7 @@ import de.unihamburg.sickstore.database.Node;
 public class Anomaly {
 
     private long clientDelay = 0;
-    private StalenessMap stalenessMap = new StalenessMap();
+    private StalenessMap stalenessMap = new StalenessMap(0);
     private Node responsiveNode = new Node();
 
     public long getClientDelay() {
@@ -177,7 +177,7 @@ public class MongoDbAnomalies implements ClientDelayGenerator, StalenessGenerato
      */
     @Override
     public StalenessMap generateStalenessMap(Set<Node> nodes, ClientRequest request) {
-        StalenessMap stalenessMap = new StalenessMap();
+        StalenessMap stalenessMap = new StalenessMap(nodes.size());
 
         for (Node node : nodes) {
             long staleness = -1;
@@ -202,7 +202,7 @@ public class MongoDbAnomalies implements ClientDelayGenerator, StalenessGenerato
                 staleness = defaultDelay;
             }
 
-            stalenessMap.put(node, staleness);
+            stalenessMap.put(node.getOrdinal(), staleness);
         }
         return stalenessMap;
     }
@@ -223,7 +223,8 @@ public class MongoDbAnomalies implements ClientDelayGenerator, StalenessGenerato
     }
 
     /**
-     * Calculates the write delay that is caused by a journal commmit.
+     * Calculates the write delay that is caused by a journal commmit. There is no modeled
+     * delay without a commit interval, e.g. because the query handler writes a real journal.
      *
      * @param request
      * @return
@@ -235,6 +236,9 @@ public class MongoDbAnomalies implements ClientDelayGenerator, StalenessGenerato
 
         long timeSinceStartup = timeHandler.getCurrentTime() - startedAt;
         long oneThird = journalCommitInterval / 3;
+        if (oneThird <= 0) {
+            return 0;
+        }
 
         return oneThird - (timeSinceStartup % oneThird);
     }
@@ -58,11 +58,19 @@ public class Throughput {
         this.hickupDuration = hickupDuration;
     }
 
-    public double getQueueingLatency(long receivedAt) {
+    /**
+     * Calculates the time a request has to wait in the queue of the node. As requests are
+     * processed in parallel, they may arrive here slightly out of order; the model itself
+     * only moves forward in time.
+     *
+     * @param receivedAt
+     * @return
+     */
+    public synchronized double getQueueingLatency(long receivedAt) {
         double latency = 0.0;
         if (maxThroughput > 0) {
             if (outstanding > 0) {
-                long idleTime = receivedAt - lastOPReceivedAt;
+                long idleTime = Math.max(0, receivedAt - lastOPReceivedAt);
                 hickupTime += idleTime;
                 if (hickupDeltaAfter > 0 && hickupTime > hickupDeltaAfter) {
                     outstanding += maxThroughput * hickupDuration;
@@ -74,7 +82,7 @@ public class Throughput {
                 latency = outstanding / maxThroughput;
             }
             outstanding++;
-            lastOPReceivedAt = receivedAt;
+            lastOPReceivedAt = Math.max(lastOPReceivedAt, receivedAt);
         }
         return latency;
     }
@@ -113,7 +121,7 @@ public class Throughput {
         this.periodically = periodically;
     }
 
-    public void cleanUp() {
+    public synchronized void cleanUp() {
         hickupDeltaAfter = hickupAfter;
         hickupTime = 0;
         outstanding = 0;
@@ -45,13 +45,13 @@ public class ConstantStaleness implements StalenessGenerator {
      * @see StalenessGenerator#generateStalenessMap(Set, ClientRequest)
      */
     public StalenessMap generateStalenessMap(Set<Node> nodes, ClientRequest request) {
-        StalenessMap delay = new StalenessMap();
+        StalenessMap delay = new StalenessMap(nodes.size());
 
         for (Node node : nodes) {
             if (node == request.getReceivedBy()) {
-                delay.put(node, ownReads);
+                delay.put(node.getOrdinal(), ownReads);
             } else {
-                delay.put(node, foreignReads);
+                delay.put(node.getOrdinal(), foreignReads);
             }
         }
         return delay;
@@ -11,6 +11,8 @@ public interface StalenessGenerator {
      * Calculates the staleness windows for a changed data item (insert, update, delete).
      *
      * The returned map associates a node with a delay, after which the item becomes visible.
+     * It is created with the size of the node list and filled by {@link Node#getOrdinal()},
+     * a new one is needed for every request.
      *
      * @param nodes a set with all nodes
      * @param request the change request
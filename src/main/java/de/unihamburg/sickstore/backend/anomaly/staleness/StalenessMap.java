@@ -2,7 +2,143 @@ package de.unihamburg.sickstore.backend.anomaly.staleness;
 
 import de.unihamburg.sickstore.database.Node;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
-public class StalenessMap extends HashMap<Node, Long> {
+/**
+ * The staleness windows of a write, i.e. the delay (in ms) after which the written
+ * version becomes visible for a node. The windows are kept in an array indexed by
+ * {@link Node#getOrdinal()}, so neither lookups nor updates box any values.
+ */
+public class StalenessMap {
+
+    /** marks nodes that have no staleness window */
+    private static final long ABSENT = Long.MIN_VALUE;
+
+    private long[] staleness;
+
+    private int size = 0;
+
+    public StalenessMap() {
+        this(0);
+    }
+
+    /**
+     * @param capacity the number of nodes in the node list
+     */
+    public StalenessMap(int capacity) {
+        staleness = new long[capacity];
+        Arrays.fill(staleness, ABSENT);
+    }
+
+    public StalenessMap(StalenessMap other) {
+        staleness = other.staleness.clone();
+        size = other.size;
+    }
+
+    public void put(Node node, long staleness) {
+        int ordinal = node.getOrdinal();
+        if (ordinal < 0) {
+            throw new IllegalArgumentException(node + " does not belong to a node list");
+        }
+        if (ordinal >= this.staleness.length) {
+            int length = this.staleness.length;
+            this.staleness = Arrays.copyOf(this.staleness, Math.max(ordinal + 1, length * 2));
+            Arrays.fill(this.staleness, length, this.staleness.length, ABSENT);
+        }
+        put(ordinal, staleness);
+    }
+
+    /**
+     * Sets the staleness window of the node with the given ordinal, which has to be
+     * smaller than the capacity of this map.
+     */
+    public void put(int ordinal, long staleness) {
+        if (this.staleness[ordinal] == ABSENT) {
+            size++;
+        }
+        this.staleness[ordinal] = staleness;
+    }
+
+    /**
+     * @return the staleness window of the given node or null, if there is none
+     */
+    public Long get(Node node) {
+        long staleness = get(node.getOrdinal());
+        return staleness == ABSENT ? null : staleness;
+    }
+
+    public boolean containsKey(Node node) {
+        return get(node.getOrdinal()) != ABSENT;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Converts the staleness windows into the timestamps since when a version
+     * written at the given time is visible, indexed by node ordinal. Nodes without
+     * a staleness window get -1, i.e. the version is visible for them right away.
+     *
+     * @param writtenAt
+     * @return
+     */
+    public long[] toVisibleSince(long writtenAt) {
+        long[] visibleSince = new long[staleness.length];
+        for (int i = 0; i < staleness.length; i++) {
+            visibleSince[i] = staleness[i] == ABSENT ? -1 : writtenAt + staleness[i];
+        }
+        return visibleSince;
+    }
+
+    private long get(int ordinal) {
+        return ordinal >= 0 && ordinal < staleness.length ? staleness[ordinal] : ABSENT;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof StalenessMap)) {
+            return false;
+        }
+        StalenessMap other = (StalenessMap) obj;
+        if (size != other.size) {
+            return false;
+        }
+        int length = Math.max(staleness.length, other.staleness.length);
+        for (int i = 0; i < length; i++) {
+            if (get(i) != other.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < staleness.length; i++) {
+            if (staleness[i] != ABSENT) {
+                hash += i ^ Long.hashCode(staleness[i]);
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < staleness.length; i++) {
+            if (staleness[i] != ABSENT) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append('#').append(i).append('=').append(staleness[i]);
+            }
+        }
+        return builder.append('}').toString();
+    }
 }
@@ -0,0 +1,56 @@
+package de.unihamburg.sickstore.backend.offheap;
+
+import com.esotericsoftware.kryo.io.Output;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Handle of bytes that have been copied into a slab by a {@link SlabAllocator}.
+ * The bytes never change, so a handle can be read by any number of threads.
+ */
+public final class OffHeapBlob {
+
+    private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    private final SlabAllocator.Slab slab;
+    private final int offset;
+    private final int length;
+
+    OffHeapBlob(SlabAllocator.Slab slab, int offset, int length) {
+        this.slab = slab;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    SlabAllocator.Slab slab() {
+        return slab;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Copies the bytes into the given output.
+     */
+    public void writeTo(Output output) {
+        output.writeBytes(read(), 0, length);
+    }
+
+    /**
+     * @return a buffer of the calling thread whose first {@link #length()} bytes are
+     * the bytes of this blob; only valid until the next call on the same thread
+     */
+    public byte[] read() {
+        byte[] bytes = scratch.get();
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+            scratch.set(bytes);
+        }
+        // the slab's position is advanced by the allocating thread, so it is not touched here
+        ByteBuffer view = slab.buffer.duplicate();
+        view.position(offset);
+        view.get(bytes, 0, length);
+        return bytes;
+    }
+}
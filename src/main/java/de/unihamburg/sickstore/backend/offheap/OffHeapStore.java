@@ -0,0 +1,38 @@
+package de.unihamburg.sickstore.backend.offheap;
+
+import de.unihamburg.sickstore.backend.Store;
+import de.unihamburg.sickstore.backend.timer.TimeHandler;
+
+import java.util.Map;
+
+/**
+ * A {@link Store} that keeps the columns of all stored versions off heap, in slabs
+ * of a {@link SlabAllocator}. Suits data sets that are large enough for garbage
+ * collection pauses to distort the measured latencies. Only keys, version chains
+ * and visibility stay on the heap.
+ */
+public class OffHeapStore extends Store {
+
+    /**
+     * Accepts the parameters of {@link SlabAllocator#newInstanceFromConfig(Map)} and
+     * {@link Store#newInstanceFromConfig(Map)}.
+     */
+    public static OffHeapStore newInstanceFromConfig(Map<String, Object> config) {
+        OffHeapStore store = new OffHeapStore(SlabAllocator.newInstanceFromConfig(config));
+        store.setIndex((String) config.getOrDefault("index", SKIP_LIST_INDEX));
+        return store;
+    }
+
+    public OffHeapStore() {
+        this(new SlabAllocator());
+    }
+
+    public OffHeapStore(SlabAllocator slabs) {
+        setSlabAllocator(slabs);
+    }
+
+    public OffHeapStore(TimeHandler timeHandler, SlabAllocator slabs) {
+        super(timeHandler);
+        setSlabAllocator(slabs);
+    }
+}
@@ -0,0 +1,220 @@
+package de.unihamburg.sickstore.backend.offheap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Allocates space for payloads outside of the heap, in large slabs that are either
+ * direct buffers or memory-mapped temporary files. Every thread bump-allocates from
+ * a slab of its own, so allocations never contend.
+ *
+ * Space within a slab is never reused, as readers may still read a blob after it
+ * has become garbage. Instead, a {@link Compaction} copies the live blobs of sparse
+ * slabs elsewhere and drops those slabs; the memory of a slab is released by the
+ * garbage collector as soon as no {@link OffHeapBlob} refers to it anymore. The slab
+ * a thread currently allocates from is never compacted, so every allocating thread
+ * keeps up to one slab.
+ */
+public class SlabAllocator {
+
+    /** the default size of a slab (64 MiB) */
+    public static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+
+    /** slabs with less live bytes than this fraction of their size are compacted */
+    public static final double DEFAULT_MIN_LIVE_RATIO = 0.5;
+
+    /**
+     * A slab and the bytes allocated in it. Only the allocating thread moves the
+     * position of the buffer, so that others read through duplicates.
+     */
+    static final class Slab {
+        final ByteBuffer buffer;
+        /** whether the slab no longer takes allocations, only then it may be compacted */
+        volatile boolean full;
+
+        Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private final int slabSize;
+    /** the directory of memory-mapped slabs, null for direct buffers */
+    private final Path directory;
+
+    /** the slab the current thread allocates from */
+    private final ThreadLocal<Slab> slab = new ThreadLocal<>();
+
+    /** all slabs that have not been dropped by a compaction */
+    private final Set<Slab> slabs = ConcurrentHashMap.newKeySet();
+
+    public static SlabAllocator newInstanceFromConfig(Map<String, Object> config) {
+        int slabSize = (int) config.getOrDefault("slabSize", DEFAULT_SLAB_SIZE);
+        String directory = (String) config.get("directory");
+        return new SlabAllocator(slabSize, directory == null ? null : Paths.get(directory));
+    }
+
+    public SlabAllocator() {
+        this(DEFAULT_SLAB_SIZE, null);
+    }
+
+    /**
+     * @param slabSize  the size of a slab in bytes
+     * @param directory the directory to create memory-mapped slabs in, or null to
+     *                  allocate direct buffers
+     */
+    public SlabAllocator(int slabSize, Path directory) {
+        if (slabSize <= 0) {
+            throw new IllegalArgumentException("Slab size must be positive");
+        }
+        this.slabSize = slabSize;
+        this.directory = directory;
+    }
+
+    /**
+     * Copies the given bytes into a slab.
+     *
+     * @return the handle of the copy
+     */
+    public OffHeapBlob allocate(byte[] bytes, int offset, int length) {
+        Slab slab;
+        if (length > slabSize) {
+            // too large for a slab, gets a buffer of its own
+            slab = newSlab(length);
+            slab.full = true;
+        } else {
+            slab = this.slab.get();
+            if (slab == null || slab.buffer.remaining() < length) {
+                if (slab != null) {
+                    slab.full = true;
+                }
+                slab = newSlab(slabSize);
+                this.slab.set(slab);
+            }
+        }
+
+        int position = slab.buffer.position();
+        slab.buffer.put(bytes, offset, length);
+        return new OffHeapBlob(slab, position, length);
+    }
+
+    private Slab newSlab(int size) {
+        Slab slab = new Slab(newBuffer(size));
+        slabs.add(slab);
+        return slab;
+    }
+
+    private ByteBuffer newBuffer(int size) {
+        if (directory == null) {
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        try {
+            Path file = Files.createTempFile(directory, "sickstore-", ".slab");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // the mapping stays valid after the channel is closed and the file is deleted
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create a slab in " + directory, e);
+        }
+    }
+
+    /**
+     * @return the number of bytes allocated in slabs that are in use, including
+     * blobs that have become garbage but have not been compacted yet
+     */
+    public long getAllocatedBytes() {
+        long allocated = 0;
+        for (Slab slab : slabs) {
+            allocated += slab.buffer.position();
+        }
+        return allocated;
+    }
+
+    /**
+     * @return the number of slabs in use
+     */
+    public long getSlabs() {
+        return slabs.size();
+    }
+
+    /**
+     * Starts a compaction, which compacts slabs with less live bytes than the given
+     * fraction of their size. All blobs that are still referenced have to be passed
+     * to {@link Compaction#mark(OffHeapBlob)} first and to {@link Compaction#move(OffHeapBlob)}
+     * afterwards; blobs that are not marked are treated as garbage.
+     */
+    public Compaction startCompaction(double minLiveRatio) {
+        return new Compaction(minLiveRatio);
+    }
+
+    /**
+     * A single compaction, which must only be used by one thread.
+     */
+    public final class Compaction {
+
+        private final double minLiveRatio;
+        /** the live bytes of all full slabs, which are the candidates */
+        private final Map<Slab, long[]> live = new IdentityHashMap<>();
+        private boolean selected;
+
+        private Compaction(double minLiveRatio) {
+            this.minLiveRatio = minLiveRatio;
+            for (Slab slab : slabs) {
+                if (slab.full) {
+                    live.put(slab, new long[1]);
+                }
+            }
+        }
+
+        /**
+         * Counts the blob as live.
+         */
+        public void mark(OffHeapBlob blob) {
+            long[] bytes = live.get(blob.slab());
+            if (bytes != null) {
+                bytes[0] += blob.length();
+            }
+        }
+
+        /**
+         * Selects the slabs to compact, which are dropped right away, as none of
+         * their blobs is handed out anymore once they have all been moved.
+         *
+         * @return false, if no slab is sparse enough to be compacted
+         */
+        public boolean select() {
+            live.entrySet().removeIf(entry -> entry.getValue()[0]
+                    >= minLiveRatio * entry.getKey().buffer.capacity());
+            slabs.removeAll(live.keySet());
+            selected = true;
+            return !live.isEmpty();
+        }
+
+        /**
+         * @return a copy of the blob in the slab of the calling thread, if its slab is
+         * compacted, or the blob itself
+         */
+        public OffHeapBlob move(OffHeapBlob blob) {
+            if (!selected) {
+                throw new IllegalStateException("No slabs have been selected yet");
+            }
+            if (!live.containsKey(blob.slab())) {
+                return blob;
+            }
+            return allocate(blob.read(), 0, blob.length());
+        }
+    }
+}
@@ -11,6 +11,8 @@ public class Node {
     private boolean primary = false;
     private long  clientLatency = 0;
     private Throughput throughput = new Throughput();
+    /** the index of this node in its node list, -1 if it does not belong to one */
+    private int ordinal = -1;
 
     public static Node newInstanceFromConfig(Map<String, Object> config) {
         Node node = new Node();
@@ -78,6 +80,28 @@ public class Node {
         this.primary = primary;
     }
 
+    /**
+     * Numbers the nodes of a node list densely, so that per-node data (e.g.
+     * staleness windows) can be kept in arrays of the list's size, indexed by
+     * {@link #getOrdinal()}. A node must only belong to a single node list.
+     *
+     * @param nodes
+     */
+    public static void assignOrdinals(Collection<Node> nodes) {
+        int ordinal = 0;
+        for (Node node : nodes) {
+            node.ordinal = ordinal++;
+        }
+    }
+
+    /**
+     * @return the index of this node in its node list, see {@link #assignOrdinals(Collection)},
+     * or -1 if it does not belong to one
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
     public String toString() {
         return "Node " + name;
     }
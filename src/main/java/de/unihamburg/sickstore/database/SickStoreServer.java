@@ -9,27 +9,40 @@ import de.unihamburg.sickstore.backend.anomaly.staleness.ConstantStaleness;
 import de.unihamburg.sickstore.backend.timer.FakeTimeHandler;
 import de.unihamburg.sickstore.backend.timer.TimeHandler;
 import de.unihamburg.sickstore.config.InstanceFactory;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.HashedWheelTimer;
 
 import java.net.InetSocketAddress;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Friedrich on 11.08.2016.
  */
 public class SickStoreServer {
     private final EventLoopGroup group = new NioEventLoopGroup();
-    private Channel channel;
+    private volatile Channel channel;
+    /** released as soon as binding the server socket has completed */
+    private final CountDownLatch bound = new CountDownLatch(1);
     private final ServerBootstrap bootstrap = new ServerBootstrap();
     private final InetSocketAddress address;
+    private final QueryHandlerInterface queryHandler;
+
+    /** holds back responses until their simulated latency has elapsed, null if the clients wait themselves */
+    private final HashedWheelTimer responseTimer;
 
     /**
      * Creates a new instance from a given config object.
@@ -39,23 +52,57 @@ public class SickStoreServer {
     @SuppressWarnings("unused")
     public static SickStoreServer newInstanceFromConfig(Map<String, Object> config) {
         int port = (int) config.getOrDefault("port", 54000);
+        int scanFrameLength = (int) config.getOrDefault("scanFrameLength",
+                SickStoreServerHandler.DEFAULT_SCAN_FRAME_LENGTH);
+        boolean delayResponses = (boolean) config.getOrDefault("delayResponses", false);
         QueryHandlerInterface queryHandler = (QueryHandlerInterface) InstanceFactory.newInstanceFromConfig(
                 (Map<String, Object>) config.get("queryHandler")
         );
 
-        return new SickStoreServer(port, queryHandler);
+        return new SickStoreServer(port, queryHandler, scanFrameLength, delayResponses);
     }
 
     public SickStoreServer(int port, final QueryHandlerInterface queryHandler) {
+        this(port, queryHandler, SickStoreServerHandler.DEFAULT_SCAN_FRAME_LENGTH);
+    }
+
+    /**
+     * @param port
+     * @param queryHandler
+     * @param scanFrameLength the length in bytes that frames of scan results are split at
+     */
+    public SickStoreServer(int port, final QueryHandlerInterface queryHandler, int scanFrameLength) {
+        this(port, queryHandler, scanFrameLength, false);
+    }
+
+    /**
+     * @param port
+     * @param queryHandler
+     * @param scanFrameLength the length in bytes that frames of scan results are split at
+     * @param delayResponses  if true, the server sends responses only after their simulated
+     *                        latency (waitTimeout) has elapsed, so that clients do not have to sleep
+     */
+    public SickStoreServer(int port, final QueryHandlerInterface queryHandler, int scanFrameLength,
+                           boolean delayResponses) {
         address = new InetSocketAddress(port);
+        this.queryHandler = queryHandler;
+        this.responseTimer = delayResponses
+                ? new HashedWheelTimer(new ThreadFactoryBuilder().setNameFormat("SickStore-response-timer")
+                        .setDaemon(true).build(), 1, TimeUnit.MILLISECONDS)
+                : null;
         bootstrap.group(group).channel(NioServerSocketChannel.class)
-                .childHandler(new SickStoreServerInitializer(queryHandler));
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childHandler(new SickStoreServerInitializer(queryHandler, scanFrameLength, responseTimer));
 
     }
 
+    /**
+     * Starts the server in a separate thread and waits until it accepts connections.
+     */
     public void start() {
         Runnable r = new ServerThread(this);
         new Thread(r).start();
+        Uninterruptibles.awaitUninterruptibly(bound);
     }
 
     public void connect() throws InterruptedException {
@@ -70,11 +117,13 @@ public class SickStoreServer {
                         System.err.println("Failed to start SickStore =======>");
                         channelFuture.cause().printStackTrace();
                     }
+                    bound.countDown();
                 }
             });
             channel = future.channel();
             channel.closeFuture().syncUninterruptibly();
         } finally {
+            bound.countDown();
             group.shutdownGracefully().sync();
         }
     }
@@ -82,9 +131,13 @@ public class SickStoreServer {
 
     public void shutdown() {
         if (channel != null) {
-            channel.close();
+            channel.close().syncUninterruptibly();
         }
         group.shutdownGracefully();
+        if (responseTimer != null) {
+            responseTimer.stop();
+        }
+        queryHandler.shutdown();
     }
 
 
@@ -5,9 +5,13 @@ import de.unihamburg.sickstore.database.messages.ClientRequest;
 import de.unihamburg.sickstore.database.messages.ServerResponse;
 import de.unihamburg.sickstore.database.messages.ServerResponseCleanup;
 import de.unihamburg.sickstore.database.messages.ServerResponseException;
+import de.unihamburg.sickstore.database.messages.ServerResponseScan;
 import de.unihamburg.sickstore.database.messages.exception.UnknownMessageTypeException;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.Timer;
+
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -15,10 +19,31 @@ import io.netty.channel.SimpleChannelInboundHandler;
  */
 public class SickStoreServerHandler extends SimpleChannelInboundHandler<Object> {
 
+    /** the default length in bytes that frames of scan results are split at (1 MiB) */
+    public static final int DEFAULT_SCAN_FRAME_LENGTH = 1024 * 1024;
+
     final private QueryHandlerInterface queryHandler;
 
+    /** longer scan results are split into several frames */
+    final private int scanFrameLength;
+
+    /** delays responses by their simulated latency, if set */
+    final private Timer responseTimer;
+
     public SickStoreServerHandler(QueryHandlerInterface queryHandler) {
+        this(queryHandler, DEFAULT_SCAN_FRAME_LENGTH, null);
+    }
+
+    /**
+     * @param queryHandler
+     * @param scanFrameLength the length in bytes that frames of scan results are split at
+     * @param responseTimer   if not null, responses are held back on this timer until their
+     *                        waitTimeout has elapsed instead of letting the client sleep
+     */
+    public SickStoreServerHandler(QueryHandlerInterface queryHandler, int scanFrameLength, Timer responseTimer) {
         this.queryHandler = queryHandler;
+        this.scanFrameLength = scanFrameLength;
+        this.responseTimer = responseTimer;
     }
 
 
@@ -35,18 +60,65 @@ public class SickStoreServerHandler extends SimpleChannelInboundHandler<Object>
 
     @Override
     public void channelRead0(ChannelHandlerContext ctx, Object msg) throws Exception {
-        ServerResponse response = null;
         if (msg instanceof ClientRequest) {
-            response = queryHandler.processQuery((ClientRequest) msg);
+            final ClientRequest request = (ClientRequest) msg;
+            final long receivedAt = System.nanoTime();
+            // the response is written by the partition thread that processed the request
+            queryHandler.processQueryAsync(request).whenComplete((response, cause) -> {
+                if (cause != null) {
+                    response = new ServerResponseException(request.getId(), new Exception(cause));
+                }
+                respond(ctx, response, receivedAt);
+            });
         } else {
-            response = new ServerResponseException(
+            ServerResponse response = new ServerResponseException(
                     -1,
                     new UnknownMessageTypeException(
                             "Cannot process request; unknown message type: " + msg.getClass()
                     )
             );
+            ctx.writeAndFlush(response);
+        }
+    }
+
+    /**
+     * Sends the response, after the remaining simulated latency has elapsed
+     * if responses are delayed by the server.
+     *
+     * @param receivedAt the time the request was received at, by {@link System#nanoTime()}
+     */
+    private void respond(ChannelHandlerContext ctx, ServerResponse response, long receivedAt) {
+        if (responseTimer == null) {
+            write(ctx, response);
+            return;
+        }
+
+        response.setDelayedByServer(true);
+        long waitTimeout = response.getWaitTimeout() == null ? 0 : response.getWaitTimeout();
+        // measured by the server clock only, as the client clock may be skewed
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receivedAt);
+        long delay = waitTimeout - elapsed;
+        if (delay <= 0) {
+            write(ctx, response);
+        } else {
+            responseTimer.newTimeout(timeout -> write(ctx, response), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the response; a scan result is split into frames that share the stream
+     * id and are reassembled by the client. The result is complete in memory on
+     * both sides, splitting only keeps single frames short.
+     */
+    private void write(ChannelHandlerContext ctx, ServerResponse response) {
+        if (response instanceof ServerResponseScan) {
+            for (ServerResponseScan frame : ((ServerResponseScan) response).split(scanFrameLength)) {
+                ctx.write(frame);
+            }
+            ctx.flush();
+        } else {
+            ctx.writeAndFlush(response);
         }
-        ctx.writeAndFlush(response);
     }
 
     @Override
@@ -8,15 +8,24 @@ import de.unihamburg.sickstore.kryo.KryoEncoder;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.util.Timer;
 
 /**
  * Created by Friedrich on 11.08.2016.
  */
 public class SickStoreServerInitializer extends ChannelInitializer<Channel> {
     private final QueryHandlerInterface handler;
+    private final int scanFrameLength;
+    private final Timer responseTimer;
 
     public SickStoreServerInitializer(QueryHandlerInterface handler) {
+        this(handler, SickStoreServerHandler.DEFAULT_SCAN_FRAME_LENGTH, null);
+    }
+
+    public SickStoreServerInitializer(QueryHandlerInterface handler, int scanFrameLength, Timer responseTimer) {
         this.handler = handler;
+        this.scanFrameLength = scanFrameLength;
+        this.responseTimer = responseTimer;
     }
 
     @Override
@@ -30,6 +39,6 @@ public class SickStoreServerInitializer extends ChannelInitializer<Channel> {
 
         pipeline.addLast(ke);
         pipeline.addLast(kd);
-        pipeline.addLast(new SickStoreServerHandler(handler));
+        pipeline.addLast(new SickStoreServerHandler(handler, scanFrameLength, responseTimer));
     }
 }
@@ -10,5 +10,12 @@ public interface Connection extends AutoCloseable {
 
     public boolean isClosed();
 
-    SickConnection.ResponseHandler write(SickConnection.ResponseCallback callback);
+    /**
+     * Sends the request of the given callback, which is notified once the response has arrived.
+     *
+     * @param callback
+     * @return the stream id assigned to the request
+     * @throws java.sql.SQLTransientException if the connection already has the maximum number of requests in flight
+     */
+    int write(SickConnection.ResponseCallback callback) throws SQLException;
 }
@@ -1,61 +1,126 @@
 package de.unihamburg.sickstore.database.client;
 
+import de.unihamburg.sickstore.backend.Version;
 import de.unihamburg.sickstore.database.messages.ServerResponse;
+import de.unihamburg.sickstore.database.messages.ServerResponseScan;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Created by Steffen Friedrich on 16.08.2016.
  */
 class Dispatcher extends SimpleChannelInboundHandler<Object> {
 
+    private static final Logger logger = LoggerFactory.getLogger(Dispatcher.class);
+
     final IDGenerator idGenerator;
 
-    private final ConcurrentMap<Integer, SickConnection.ResponseHandler> pending = new ConcurrentHashMap<Integer, SickConnection.ResponseHandler>();
+    /** callbacks of the requests in flight, indexed by their stream id */
+    private final AtomicReferenceArray<SickConnection.ResponseCallback> pending;
+    private final AtomicInteger pendingCount = new AtomicInteger();
     private final SickConnection connection;
 
+    /** entries of scan results split into several frames received so far, only accessed by the event loop */
+    private final Map<Integer, List<Version>> partialScans = new HashMap<>();
+
     Dispatcher(SickConnection connection) {
-        idGenerator = IDGenerator.newInstance();
+        idGenerator = IDGenerator.newInstance(connection.getConnectionFactory().maxInFlightRequests);
+        pending = new AtomicReferenceArray<>(idGenerator.capacity());
         this.connection = connection;
     }
 
-    void add(SickConnection.ResponseHandler handler) {
-        SickConnection.ResponseHandler old = pending.put(handler.streamId, handler);
+    /**
+     * Registers the callback under a free stream id.
+     *
+     * @param callback
+     * @return the stream id
+     * @throws SQLTransientException if all stream ids are in use
+     */
+    int add(SickConnection.ResponseCallback callback) throws SQLTransientException {
+        int streamId = idGenerator.next();
+        if (streamId < 0) {
+            throw new SQLTransientException("Too many requests in flight on connection " + connection.getName()
+                    + " (maximum " + idGenerator.capacity() + ")");
+        }
+        SickConnection.ResponseCallback old = pending.getAndSet(streamId, callback);
         assert old == null;
+        pendingCount.incrementAndGet();
+        return streamId;
     }
 
-    void removeHandler(SickConnection.ResponseHandler handler, boolean releaseStreamId) {
-        if (!releaseStreamId) {
-            idGenerator.mark(handler.streamId);
-        }
-        boolean removed = pending.remove(handler.streamId, handler);
-        if (!removed) {
-            // We raced, so if we marked the streamId above, that was wrong.
-            if (!releaseStreamId)
-                idGenerator.unmark(handler.streamId);
-            return;
-        }
-
-        if (releaseStreamId) {
-            idGenerator.release(handler.streamId);
+    /**
+     * Unregisters the callback of a request that is given up and releases its
+     * stream id, unless a response has completed it already.
+     *
+     * @return false, if the callback is no longer pending
+     */
+    boolean remove(int streamId, SickConnection.ResponseCallback callback) {
+        if (!pending.compareAndSet(streamId, callback, null)) {
+            return false;
         }
+        pendingCount.decrementAndGet();
+        idGenerator.release(streamId);
+        partialScans.remove(streamId);
+        return true;
     }
 
-    public ConcurrentMap<Integer, SickConnection.ResponseHandler> getPending() {
-        return pending;
+    boolean hasPending() {
+        return pendingCount.get() > 0;
     }
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, Object object) throws Exception {
         if (object instanceof ServerResponse) {
             ServerResponse response = (ServerResponse) object;
             int streamId = response.getStreamId();
-            SickConnection.ResponseHandler handler = pending.remove(streamId);
+            if (streamId < 0 || streamId >= pending.length() || pending.get(streamId) == null) {
+                logger.warn("Dropping a response to unknown stream id {} on connection {}",
+                        streamId, connection.getName());
+                return;
+            }
+            if (response instanceof ServerResponseScan && !assemble((ServerResponseScan) response)) {
+                // further frames of the scan result follow
+                return;
+            }
+            SickConnection.ResponseCallback callback = pending.getAndSet(streamId, null);
+            if (callback == null) {
+                // the request is no longer pending and its id has been released already
+                return;
+            }
+            pendingCount.decrementAndGet();
             idGenerator.release(streamId);
-            handler.callback.onSet(connection, response);
+            callback.onSet(connection, response);
+        }
+    }
+
+    /**
+     * Collects the entries of a scan result that is split into several frames;
+     * the result is only handed out once it is complete.
+     *
+     * @param frame
+     * @return true, if this was the last frame and it now holds the complete result
+     */
+    private boolean assemble(ServerResponseScan frame) {
+        int streamId = frame.getStreamId();
+        if (frame.hasMore()) {
+            partialScans.computeIfAbsent(streamId, id -> new ArrayList<>()).addAll(frame.getEntries());
+            return false;
+        }
 
+        List<Version> entries = partialScans.remove(streamId);
+        if (entries != null) {
+            entries.addAll(frame.getEntries());
+            frame.setEntries(entries);
         }
+        return true;
     }
-}
\ No newline at end of file
+}
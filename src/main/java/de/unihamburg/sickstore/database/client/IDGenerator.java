@@ -1,101 +1,98 @@
 package de.unihamburg.sickstore.database.client;
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLongArray;
-
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Hands out the stream ids of a connection. Free ids are kept in a lock-free
+ * stack, so that both allocating and releasing an id take constant time.
+ */
 class IDGenerator {
-    private static final long MAX_UNSIGNED_LONG = -1L;
+    /** the number of requests a connection may have in flight by default */
+    static final int DEFAULT_CAPACITY = 1 << 15;
+
+    private static final int EMPTY = -1;
+    /** the successor of ids that have been handed out */
+    private static final int IN_USE = -2;
 
     static IDGenerator newInstance() {
-        return new IDGenerator(2);
+        return new IDGenerator(DEFAULT_CAPACITY);
     }
 
-    private final AtomicLongArray bits;
-    private final int maxIds;
-    private final AtomicInteger offset;
-
-    // If a query timeout, we'll stop waiting for it. However in that case, we
-    // can't release/reuse the ID because we don't know if the response is lost
-    // or will just come back to use sometimes in the future. In that case, we
-    // just "mark" the fact that we have one less available ID and marked counts
-    // how many marks we've put.
-    private final AtomicInteger marked = new AtomicInteger(0);
-
-    private IDGenerator(int streamIdSizeInBytes) {
-        // Stream IDs are signed and we only handle positive values
-        // (negative stream IDs are for server side initiated streams).
-        maxIds = 1 << (streamIdSizeInBytes * 8 - 1);
-
-        // This is true for 1 byte = 128 streams, and therefore for any higher value
-        assert maxIds % 64 == 0;
-
-        // We use one bit in our array of longs to represent each stream ID.
-        bits = new AtomicLongArray(maxIds / 64);
-
-        // Initialize all bits to 1
-        for (int i = 0; i < bits.length(); i++)
-            bits.set(i, MAX_UNSIGNED_LONG);
-
-        offset = new AtomicInteger(bits.length() - 1);
+    static IDGenerator newInstance(int capacity) {
+        return new IDGenerator(capacity);
     }
 
-    public int next() {
-        int previousOffset, myOffset;
-        do {
-            previousOffset = offset.get();
-            myOffset = (previousOffset + 1) % bits.length();
-        } while (!offset.compareAndSet(previousOffset, myOffset));
-
-        for (int i = 0; i < bits.length(); i++) {
-            int j = (i + myOffset) % bits.length();
+    /** for each free id, the id below it on the stack, or {@link #IN_USE} */
+    private final AtomicIntegerArray nextFree;
+    /** the top of the stack in the lower 32 bits and a version counter in the upper ones, which avoids ABA races */
+    private final AtomicLong head;
+    private final int maxIds;
 
-            int id = atomicGetAndSetFirstAvailable(j);
-            if (id >= 0)
-                return id + (64 * j);
+    private IDGenerator(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive, but was " + capacity);
         }
-        return -1;
-    }
+        maxIds = capacity;
 
-    public void release(int streamId) {
-        atomicClear(streamId / 64, streamId % 64);
-    }
-
-    public void mark(int streamId) {
-        marked.incrementAndGet();
-    }
-
-    public void unmark(int streamId) {
-        marked.decrementAndGet();
-    }
-
-    public int maxAvailableStreams() {
-        return maxIds - marked.get();
+        // Initially, all ids are free and the lowest id is on top
+        nextFree = new AtomicIntegerArray(maxIds);
+        for (int i = 0; i < maxIds - 1; i++) {
+            nextFree.set(i, i + 1);
+        }
+        nextFree.set(maxIds - 1, EMPTY);
+        head = new AtomicLong(pack(0, 0));
     }
 
-    // Returns >= 0 if found and set an id, -1 if no bits are available.
-    private int atomicGetAndSetFirstAvailable(int idx) {
+    /**
+     * @return a free stream id, or -1 if all ids are in use
+     */
+    public int next() {
         while (true) {
-            long l = bits.get(idx);
-            if (l == 0)
+            long current = head.get();
+            int id = (int) current;
+            if (id == EMPTY) {
                 return -1;
-
-            // Find the position of the right-most 1-bit
-            int id = Long.numberOfTrailingZeros(l);
-            if (bits.compareAndSet(idx, l, l ^ mask(id)))
+            }
+            long next = pack(version(current) + 1, nextFree.get(id));
+            if (head.compareAndSet(current, next)) {
+                nextFree.set(id, IN_USE);
                 return id;
+            }
         }
     }
 
-    private void atomicClear(int idx, int toClear) {
+    /**
+     * Puts the id back on the stack, unless it is not in use, which would link it
+     * into the stack twice.
+     *
+     * @return false, if the id is not in use
+     */
+    public boolean release(int streamId) {
+        if (!nextFree.compareAndSet(streamId, IN_USE, EMPTY)) {
+            return false;
+        }
         while (true) {
-            long l = bits.get(idx);
-            if (bits.compareAndSet(idx, l, l | mask(toClear)))
-                return;
+            long current = head.get();
+            nextFree.set(streamId, (int) current);
+            if (head.compareAndSet(current, pack(version(current) + 1, streamId))) {
+                return true;
+            }
         }
     }
 
-    private static long mask(int id) {
-        return 1L << id;
+    /**
+     * @return the number of stream ids, all ids are smaller than this
+     */
+    int capacity() {
+        return maxIds;
+    }
+
+    private static long pack(int version, int id) {
+        return ((long) version << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static int version(long head) {
+        return (int) (head >>> 32);
     }
 }
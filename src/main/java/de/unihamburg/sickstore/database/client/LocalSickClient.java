@@ -54,6 +54,13 @@ public class LocalSickClient extends KryoMessageRegistrar {
         return true;
     }
 
+    public boolean upsert(String table, String key, Version values, WriteConcern writeConcern) {
+        ClientRequestUpsert request = new ClientRequestUpsert(table, key, values, writeConcern, destinationNode);
+        ServerResponse response = queryHandler.processQuery(request);
+        responseSleep(response);
+        return true;
+    }
+
     public boolean delete(String table, String key, WriteConcern writeConcern) throws DatabaseException {
         ClientRequestDelete request = new ClientRequestDelete(table, key, writeConcern, destinationNode);
         ServerResponse response = queryHandler.processQuery(request);
@@ -77,12 +84,32 @@ public class LocalSickClient extends KryoMessageRegistrar {
         return true;
     }
 
+    public boolean checkpoint() throws Exception {
+        return sendCheckpoint(new ClientRequestCheckpoint(false));
+    }
+
+    public boolean rollback() throws Exception {
+        return sendCheckpoint(new ClientRequestCheckpoint(true));
+    }
+
+    private boolean sendCheckpoint(ClientRequestCheckpoint request) throws Exception {
+        ServerResponse response = queryHandler.processQuery(request);
+        if (response instanceof ServerResponseException) {
+            throw ((ServerResponseException) response).getException();
+        }
+        return true;
+    }
+
     public void disconnect() {
     }
 
     private void responseSleep(ServerResponse response) {
-        long now = System.currentTimeMillis();
-        long latency = now - response.getSentByClientAt();
+        if (response.isDelayedByServer()) {
+            return;
+        }
+        // no time has elapsed if the send time is unknown
+        long latency = response.getSentByClientAt() < 0 ? 0
+                : System.currentTimeMillis() - response.getSentByClientAt();
         long diff = response.getWaitTimeout() - latency;
         if (diff > 0) {
             timeHandler.sleep(diff);
@@ -3,6 +3,7 @@ package de.unihamburg.sickstore.database.client;
 import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
+import de.unihamburg.sickstore.database.hikari.ProxyConnection;
 import de.unihamburg.sickstore.database.messages.ClientRequest;
 import de.unihamburg.sickstore.database.messages.ServerResponse;
 
@@ -10,27 +11,43 @@ import java.sql.SQLException;
 import java.util.concurrent.ExecutionException;
 
 /**
+ * The only object a client allocates per request besides the request itself. It
+ * sends the request, is registered with the connection's dispatcher under the
+ * request's stream id and is completed with the response.
+ *
  * Created by Steffen Friedrich on 17.08.2016.
  */
-class ServerResponseFuture   extends AbstractFuture<ServerResponse> implements  RequestHandler.Callback, ListenableFuture<ServerResponse> {
+class ServerResponseFuture extends AbstractFuture<ServerResponse> implements SickConnection.ResponseCallback, ListenableFuture<ServerResponse> {
 
     private final Client client;
     private final ClientRequest request;
-    private RequestHandler handler;
 
     ServerResponseFuture(Client client, ClientRequest request) {
         this.client = client;
         this.request = request;
     }
 
+    void send() throws SQLException {
+        Connection connection = client.getConnection();
+        try {
+            connection.write(this);
+        } finally {
+            if (connection instanceof ProxyConnection) {
+                ((ProxyConnection) connection).close();
+            }
+        }
+    }
+
     @Override
-    public void onSet(SickConnection connection, ServerResponse response, ClientRequest request) {
+    public void onSet(SickConnection connection, ServerResponse response) {
+        connection.release();
         set(response);
     }
 
     @Override
-    public void onSet(SickConnection connection, ServerResponse response) {
-        onSet(connection, response, null);
+    public void onFailure(SickConnection connection, Throwable cause) {
+        connection.release();
+        setException(cause);
     }
 
     public ServerResponse getUninterruptibly() throws SQLException {
@@ -42,10 +59,6 @@ class ServerResponseFuture   extends AbstractFuture<ServerResponse> implements
         }
     }
 
-    public void register(RequestHandler handler) {
-        this.handler = handler;
-    }
-
     @Override
     public ClientRequest request() {
         return request;
@@ -6,18 +6,39 @@ import de.unihamburg.sickstore.database.ReadPreference;
 import de.unihamburg.sickstore.database.WriteConcern;
 import de.unihamburg.sickstore.database.messages.*;
 import de.unihamburg.sickstore.database.messages.exception.DatabaseException;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 
 abstract public class SickClient implements Client {
     private static final Logger logger = LoggerFactory.getLogger(SickStoreConnectionPool.class);
 
+    /**
+     * completes asynchronous requests once the simulated latency has elapsed; created
+     * on the first delayed response, so clients that never need it run no timer thread
+     */
+    private Timer delayTimer;
+    private boolean delayTimerStopped;
+    /** guards the timer, apart from the client's monitor, which disconnect() holds */
+    private final Object delayTimerLock = new Object();
+
     private final String host;
     private final int port;
     private final String destinationNode;
@@ -26,17 +47,58 @@ abstract public class SickClient implements Client {
     SickConnection.ConnectionFactory connectionFactory;
 
     public SickClient(String host, int port, String destinationNode, TimeHandler timeHandler) {
+        this(host, port, destinationNode, timeHandler, IDGenerator.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param host
+     * @param port
+     * @param destinationNode
+     * @param timeHandler
+     * @param maxInFlightRequests the maximum number of requests in flight on a single connection,
+     *                            further requests are rejected until responses have arrived
+     */
+    public SickClient(String host, int port, String destinationNode, TimeHandler timeHandler,
+                      int maxInFlightRequests) {
         this.host = host;
         this.port = port;
         this.destinationNode = destinationNode;
         this.timeHandler = timeHandler;
-        this.connectionFactory = new SickConnection.ConnectionFactory(this);
+        this.connectionFactory = new SickConnection.ConnectionFactory(this, maxInFlightRequests);
     }
 
     abstract public Connection getConnection() throws SQLException;
 
     abstract public ServerResponse send(ClientRequest request) throws SQLException;
 
+    abstract public ServerResponseFuture executeAsync(ClientRequest request) throws SQLException;
+
+    /**
+     * Sends a request without blocking the calling thread.
+     *
+     * @param request
+     * @return a future that is completed with the raw response as soon as it arrives
+     */
+    public CompletableFuture<ServerResponse> sendAsync(ClientRequest request) {
+        CompletableFuture<ServerResponse> result = new CompletableFuture<>();
+        try {
+            Futures.addCallback(executeAsync(request), new FutureCallback<ServerResponse>() {
+                @Override
+                public void onSuccess(ServerResponse response) {
+                    result.complete(response);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+        } catch (SQLException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
     public String getHost() {
         return host;
     }
@@ -59,6 +121,42 @@ abstract public class SickClient implements Client {
 
     abstract public void disconnect();
 
+    /**
+     * Stops the timer of delayed responses, if there is one; responses that are
+     * still delayed are handed out right away. Called by {@link #disconnect()}.
+     */
+    protected void stopDelayTimer() {
+        Timer timer;
+        synchronized (delayTimerLock) {
+            timer = delayTimer;
+            delayTimer = null;
+            delayTimerStopped = true;
+        }
+        if (timer != null) {
+            for (Timeout timeout : timer.stop()) {
+                try {
+                    timeout.task().run(timeout);
+                } catch (Exception e) {
+                    logger.warn("Could not complete a delayed response", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the timer of delayed responses or null, if the client has been disconnected
+     */
+    private Timer delayTimer() {
+        synchronized (delayTimerLock) {
+            if (delayTimer == null && !delayTimerStopped) {
+                delayTimer = new HashedWheelTimer(
+                        new ThreadFactoryBuilder().setNameFormat("SickStore-client-timer-%d").setDaemon(true).build(),
+                        1, TimeUnit.MILLISECONDS);
+            }
+            return delayTimer;
+        }
+    }
+
     /**
      * Inserts field/value pairs into the database
      *
@@ -195,6 +293,34 @@ abstract public class SickClient implements Client {
         return update(table, key, values, new WriteConcern());
     }
 
+    /**
+     * Stores a record under the given key, regardless of whether there already is one.
+     *
+     * @param table  The name of the table
+     * @param key    The record key of the record to write.
+     * @param values field/value pairs to store under the given key
+     * @return true on success; false else
+     * @throws DatabaseException
+     */
+    public boolean upsert(String table, String key, Version values, WriteConcern writeConcern)
+            throws Exception {
+        ClientRequestUpsert request = new ClientRequestUpsert(table, key, values, writeConcern, destinationNode);
+        Object ack = send(request);
+
+        if (ack instanceof ServerResponseUpsert) {
+            waitForServerHickup((ServerResponseUpsert) ack);
+            return true;
+        } else if (ack instanceof ServerResponseException) {
+            throw ((ServerResponseException) ack).getException();
+        } else {
+            throw new DatabaseException("received wrong response of type:" + ack + " for upsert operation");
+        }
+    }
+
+    public boolean upsert(String table, String key, Version values) throws Exception {
+        return upsert(table, key, values, new WriteConcern());
+    }
+
     public boolean delete(String table, String key, WriteConcern writeConcern) throws Exception {
         ClientRequestDelete request = new ClientRequestDelete(table, key, writeConcern, destinationNode);
         Object ack = send(request);
@@ -221,6 +347,134 @@ abstract public class SickClient implements Client {
         return delete(table, key, new WriteConcern());
     }
 
+    /**
+     * Reads several records with a single request.
+     *
+     * @param table          The name of the table
+     * @param keys           The record keys of the records to read
+     * @param fields         The list of fields to read, or null for all of them
+     * @param readPreference
+     * @return the read versions in the order of the keys
+     * @throws DatabaseException if one of the reads failed
+     */
+    public List<Version> multiRead(String table, List<String> keys, Set<String> fields,
+                                   ReadPreference readPreference) throws Exception {
+        ClientRequestMultiRead request = new ClientRequestMultiRead(table, keys, fields, destinationNode,
+                readPreference);
+        Object ack = send(request);
+
+        if (ack instanceof ServerResponseMultiRead) {
+            ServerResponseMultiRead response = (ServerResponseMultiRead) ack;
+            waitForServerHickup(response);
+            return versions(response);
+        } else if (ack instanceof ServerResponseException) {
+            throw ((ServerResponseException) ack).getException();
+        } else {
+            throw new DatabaseException("received wrong response of type:" + ack + " for multi read operation");
+        }
+    }
+
+    public List<Version> multiRead(String table, List<String> keys, Set<String> fields) throws Exception {
+        return multiRead(table, keys, fields, null);
+    }
+
+    /**
+     * Sends several inserts, updates and deletes with a single request. The writes
+     * are applied independently, i.e. a failed write does not affect the others.
+     *
+     * @param writes
+     * @return for each write, whether it succeeded
+     * @throws DatabaseException
+     */
+    public List<Boolean> multiWrite(List<ClientRequestWrite> writes) throws Exception {
+        ClientRequestMultiWrite request = new ClientRequestMultiWrite(writes, destinationNode);
+        Object ack = send(request);
+
+        if (ack instanceof ServerResponseMultiWrite) {
+            ServerResponseMultiWrite response = (ServerResponseMultiWrite) ack;
+            waitForServerHickup(response);
+            return acknowledged(response);
+        } else if (ack instanceof ServerResponseException) {
+            throw ((ServerResponseException) ack).getException();
+        } else {
+            throw new DatabaseException("received wrong response of type:" + ack + " for multi write operation");
+        }
+    }
+
+    /**
+     * Loads records with pipelined bulk-load requests. Up to the given number of windows
+     * are in flight at once, further windows are only sent after the oldest one has been
+     * acknowledged.
+     *
+     * @param table             The name of the table
+     * @param records           the records to load, their keys are taken from the versions
+     * @param windowSize        the number of records per request
+     * @param windows           the maximum number of requests in flight
+     * @param generateAnomalies if false, the records are visible for all nodes immediately
+     * @param checkExistence    if false, existing records are overwritten instead of being skipped
+     * @return the number of loaded records
+     * @throws DatabaseException
+     */
+    public long bulkLoad(String table, Iterator<Version> records, int windowSize, int windows,
+                         boolean generateAnomalies, boolean checkExistence) throws Exception {
+        Deque<CompletableFuture<Integer>> inFlight = new ArrayDeque<>(windows);
+        long loaded = 0;
+        while (records.hasNext()) {
+            List<Version> window = new ArrayList<>(windowSize);
+            while (window.size() < windowSize && records.hasNext()) {
+                window.add(records.next());
+            }
+            if (inFlight.size() >= windows) {
+                loaded += join(inFlight.poll());
+            }
+            ClientRequestBulkLoad request = new ClientRequestBulkLoad(table, window, new WriteConcern(),
+                    destinationNode, generateAnomalies, checkExistence);
+            inFlight.add(sendAsync(request, ServerResponseBulkLoad.class, "bulk load",
+                    ServerResponseBulkLoad::getLoaded));
+        }
+        while (!inFlight.isEmpty()) {
+            loaded += join(inFlight.poll());
+        }
+        return loaded;
+    }
+
+    public long bulkLoad(String table, Iterator<Version> records) throws Exception {
+        return bulkLoad(table, records, 1000, 8, false, true);
+    }
+
+    /**
+     * Waits for the result of an asynchronous operation and throws its original exception if it failed.
+     */
+    private static <T> T join(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static List<Version> versions(ServerResponseMulti response) throws Exception {
+        List<Version> versions = new ArrayList<>(response.getResponses().size());
+        for (ServerResponse item : response.getResponses()) {
+            if (item instanceof ServerResponseException) {
+                throw ((ServerResponseException) item).getException();
+            }
+            versions.add(((ServerResponseRead) item).getVersion());
+        }
+        return versions;
+    }
+
+    private static List<Boolean> acknowledged(ServerResponseMulti response) {
+        List<Boolean> acknowledged = new ArrayList<>(response.getResponses().size());
+        for (ServerResponse item : response.getResponses()) {
+            acknowledged.add(!(item instanceof ServerResponseException));
+        }
+        return acknowledged;
+    }
+
     /**
      * Request to export measurements and restart measurement
      *
@@ -242,12 +496,181 @@ abstract public class SickClient implements Client {
         }
     }
 
+    /**
+     * Takes a checkpoint of the data, which {@link #rollback()} returns to.
+     *
+     * @return true on success
+     * @throws DatabaseException
+     */
+    public boolean checkpoint() throws Exception {
+        return sendCheckpoint(new ClientRequestCheckpoint(false));
+    }
+
+    /**
+     * Rolls the data back to the last checkpoint, i.e. drops all writes since.
+     *
+     * @return true on success
+     * @throws DatabaseException if there is no checkpoint
+     */
+    public boolean rollback() throws Exception {
+        return sendCheckpoint(new ClientRequestCheckpoint(true));
+    }
+
+    private boolean sendCheckpoint(ClientRequestCheckpoint request) throws Exception {
+        Object ack = send(request);
+
+        if (ack instanceof ServerResponseCheckpoint) {
+            return true;
+        } else if (ack instanceof ServerResponseException) {
+            throw ((ServerResponseException) ack).getException();
+        } else {
+            throw new DatabaseException("received wrong response of type:" + ack + " for " + request + " operation");
+        }
+    }
+
+    public CompletableFuture<Boolean> insertAsync(String table, String key, Version values, WriteConcern writeConcern) {
+        ClientRequestInsert request = new ClientRequestInsert(table, key, values, writeConcern, destinationNode);
+        return sendAsync(request, ServerResponseInsert.class, "insert", response -> true);
+    }
+
+    public CompletableFuture<Boolean> insertAsync(String table, String key, Version values) {
+        return insertAsync(table, key, values, new WriteConcern());
+    }
+
+    public CompletableFuture<Version> readAsync(String table, String key, Set<String> fields,
+                                                ReadPreference readPreference) {
+        ClientRequestRead request = new ClientRequestRead(table, key, fields, destinationNode, readPreference);
+        return sendAsync(request, ServerResponseRead.class, "read", ServerResponseRead::getVersion);
+    }
+
+    public CompletableFuture<Version> readAsync(String table, String key, Set<String> fields) {
+        return readAsync(table, key, fields, null);
+    }
+
+    public CompletableFuture<List<Version>> scanAsync(String table, String startkey, int recordcount,
+                                                      Set<String> fields, boolean ascending,
+                                                      ReadPreference readPreference) {
+        ClientRequestScan request = new ClientRequestScan(table, startkey, recordcount, fields, ascending, destinationNode,
+                readPreference);
+        return sendAsync(request, ServerResponseScan.class, "scan", ServerResponseScan::getEntries);
+    }
+
+    public CompletableFuture<List<Version>> scanAsync(String table, String startkey, int recordcount,
+                                                      Set<String> fields) {
+        return scanAsync(table, startkey, recordcount, fields, true, null);
+    }
+
+    public CompletableFuture<Boolean> updateAsync(String table, String key, Version values, WriteConcern writeConcern) {
+        ClientRequestUpdate request = new ClientRequestUpdate(table, key, values, writeConcern, destinationNode);
+        return sendAsync(request, ServerResponseUpdate.class, "update", response -> true);
+    }
+
+    public CompletableFuture<Boolean> updateAsync(String table, String key, Version values) {
+        return updateAsync(table, key, values, new WriteConcern());
+    }
+
+    public CompletableFuture<Boolean> upsertAsync(String table, String key, Version values, WriteConcern writeConcern) {
+        ClientRequestUpsert request = new ClientRequestUpsert(table, key, values, writeConcern, destinationNode);
+        return sendAsync(request, ServerResponseUpsert.class, "upsert", response -> true);
+    }
+
+    public CompletableFuture<Boolean> upsertAsync(String table, String key, Version values) {
+        return upsertAsync(table, key, values, new WriteConcern());
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(String table, String key, WriteConcern writeConcern) {
+        ClientRequestDelete request = new ClientRequestDelete(table, key, writeConcern, destinationNode);
+        return sendAsync(request, ServerResponseDelete.class, "delete", response -> true);
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(String table, String key) {
+        return deleteAsync(table, key, new WriteConcern());
+    }
+
+    public CompletableFuture<List<Version>> multiReadAsync(String table, List<String> keys, Set<String> fields,
+                                                           ReadPreference readPreference) {
+        ClientRequestMultiRead request = new ClientRequestMultiRead(table, keys, fields, destinationNode,
+                readPreference);
+        return sendAsync(request, ServerResponseMultiRead.class, "multi read", SickClient::versions);
+    }
+
+    public CompletableFuture<List<Boolean>> multiWriteAsync(List<ClientRequestWrite> writes) {
+        ClientRequestMultiWrite request = new ClientRequestMultiWrite(writes, destinationNode);
+        return sendAsync(request, ServerResponseMultiWrite.class, "multi write", SickClient::acknowledged);
+    }
+
+    /**
+     * Sends the request and completes the returned future with the result extracted
+     * from the response once the simulated latency has elapsed. No thread is blocked
+     * in the meantime, the completion is scheduled on the client's timer instead.
+     *
+     * @param request
+     * @param type      the expected response type
+     * @param operation name of the operation for error messages
+     * @param result    extracts the result from the response
+     */
+    private <R extends ServerResponse, T> CompletableFuture<T> sendAsync(ClientRequest request, Class<R> type,
+                                                                         String operation, Result<R, T> result) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        sendAsync(request).whenComplete((ack, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else if (ack instanceof ServerResponseException) {
+                future.completeExceptionally(((ServerResponseException) ack).getException());
+            } else if (!type.isInstance(ack)) {
+                future.completeExceptionally(new DatabaseException(
+                        "received wrong response of type:" + ack + " for " + operation + " operation"));
+            } else {
+                R response = type.cast(ack);
+                long diff = remainingDelay(response);
+                Timer timer = diff > 0 ? delayTimer() : null;
+                try {
+                    if (timer != null) {
+                        timer.newTimeout(timeout -> complete(future, response, result), diff, TimeUnit.MILLISECONDS);
+                        return;
+                    }
+                } catch (IllegalStateException e) {
+                    // the client has been disconnected concurrently
+                }
+                complete(future, response, result);
+            }
+        });
+        return future;
+    }
+
+    private static <R extends ServerResponse, T> void complete(CompletableFuture<T> future, R response,
+                                                               Result<R, T> result) {
+        try {
+            future.complete(result.apply(response));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Extracts the result of an operation from its response.
+     */
+    private interface Result<R extends ServerResponse, T> {
+        T apply(R response) throws Exception;
+    }
+
+    /**
+     * @param response
+     * @return the time in ms that is left until the response may be handed out
+     */
+    private static long remainingDelay(ServerResponse response) {
+        if (response.isDelayedByServer()) {
+            // the server did not send the response before the latency had elapsed
+            return 0;
+        }
+        // no time has elapsed if the send time is unknown
+        long latency = response.getSentByClientAt() < 0 ? 0
+                : System.currentTimeMillis() - response.getSentByClientAt();
+        return response.getWaitTimeout() - latency;
+    }
 
     public void waitForServerHickup(ServerResponse response) {
-        long sentByClientAt = response.getSentByClientAt();
-        long now = System.currentTimeMillis();
-        long latency = now - sentByClientAt;
-        long diff = response.getWaitTimeout() - latency;
+        long diff = remainingDelay(response);
         if (diff > 0) {
             try {
                 Thread.sleep(diff);
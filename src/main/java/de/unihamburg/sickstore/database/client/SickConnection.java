@@ -7,6 +7,7 @@ import de.unihamburg.sickstore.database.messages.*;
 import de.unihamburg.sickstore.kryo.KryoDecoder;
 import de.unihamburg.sickstore.kryo.KryoEncoder;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
@@ -120,7 +121,7 @@ public class SickConnection implements Connection{
         if (future.isDone()) {
             return true;
         } else {
-            if (force || dispatcher.getPending().isEmpty()) {
+            if (force || !dispatcher.hasPending()) {
                 if (force)
                 future.force();
                 return true;
@@ -130,12 +131,24 @@ public class SickConnection implements Connection{
         }
     }
 
-    public ResponseHandler write(ResponseCallback callback) {
-        ResponseHandler h = new ResponseHandler(this, callback);
-        dispatcher.add(h);
-        ClientRequest request = callback.request().setStreamId(h.streamId);
-        channel.writeAndFlush(request);
-        return h;
+    public int write(ResponseCallback callback) throws SQLException {
+        final int streamId;
+        try {
+            streamId = dispatcher.add(callback);
+        } catch (SQLException e) {
+            release();
+            throw e;
+        }
+        channel.writeAndFlush(callback.request().setStreamId(streamId)).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                // the request never left, so no response can complete it
+                if (!future.isSuccess() && dispatcher.remove(streamId, callback)) {
+                    callback.onFailure(SickConnection.this, future.cause());
+                }
+            }
+        });
+        return streamId;
     }
 
     private static String extractMessage(Throwable t) {
@@ -166,6 +179,8 @@ public class SickConnection implements Connection{
     public static class ConnectionFactory {
         final Client client;
         final EventLoopGroup eventLoopGroup;
+        /** the maximum number of requests in flight on a single connection */
+        final int maxInFlightRequests;
 
         private final ChannelGroup allChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
@@ -173,7 +188,12 @@ public class SickConnection implements Connection{
         private volatile boolean isShutdown;
 
         ConnectionFactory(Client client) {
+            this(client, IDGenerator.DEFAULT_CAPACITY);
+        }
+
+        ConnectionFactory(Client client, int maxInFlightRequests) {
             this.client = client;
+            this.maxInFlightRequests = maxInFlightRequests;
             this.eventLoopGroup = new NioEventLoopGroup(0, threadFactory("nio-worker"));
         }
 
@@ -207,6 +227,7 @@ public class SickConnection implements Connection{
             Bootstrap b = new Bootstrap();
             b.group(eventLoopGroup).channel(NioSocketChannel.class);
             b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
+            b.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
             return b;
         }
 
@@ -255,27 +276,9 @@ public class SickConnection implements Connection{
     public interface ResponseCallback {
         ClientRequest request();
         void onSet(SickConnection connection, ServerResponse response);
+        void onFailure(SickConnection connection, Throwable cause);
     }
 
-    public static class ResponseHandler {
-        final int streamId;
-        final ResponseCallback callback;
-        final SickConnection connection;
-
-        ResponseHandler(SickConnection connection, ResponseCallback callback) {
-            this.connection = connection;
-            this.streamId = connection.dispatcher.idGenerator.next();
-            this.callback = callback;
-        }
-
-        boolean cancelHandler() {
-            connection.dispatcher.removeHandler(this, false);
-            return true;
-        }
-    }
-
-
-
     public static abstract class FailureCallback<V> implements FutureCallback<V> {
         @Override
         public void onSuccess(V result) { /* nothing */ }
@@ -36,7 +36,16 @@ public class SickStoreConnectionPool extends SickClient implements Client {
     }
 
     public SickStoreConnectionPool(String host, int port, String destinationNode, TimeHandler timeHandler, int maxConnections) throws  ConnectException {
-        super(host, port, destinationNode, new SystemTimeHandler());
+        this(host, port, destinationNode, timeHandler, maxConnections, IDGenerator.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param maxInFlightRequests the maximum number of requests in flight on a single connection,
+     *                            further requests fail with a {@link java.sql.SQLTransientException}
+     */
+    public SickStoreConnectionPool(String host, int port, String destinationNode, TimeHandler timeHandler,
+                                   int maxConnections, int maxInFlightRequests) throws  ConnectException {
+        super(host, port, destinationNode, new SystemTimeHandler(), maxInFlightRequests);
         this.maxConnections = maxConnections;
 
         this.blockingExecutorQueue = new LinkedBlockingQueue<Runnable>();
@@ -57,6 +66,7 @@ public class SickStoreConnectionPool extends SickClient implements Client {
 
 
     synchronized public void disconnect() {
+        stopDelayTimer();
         this.connectionPool.close();
     }
 
@@ -75,7 +85,7 @@ public class SickStoreConnectionPool extends SickClient implements Client {
 
     public ServerResponseFuture executeAsync(ClientRequest request) throws SQLException {
         ServerResponseFuture future = new ServerResponseFuture(this, request);
-        new RequestHandler(this, future, request).send();
+        future.send();
         return future;
     }
 
@@ -78,6 +78,7 @@ public class SickStoreHikariPool extends SickClient {
         if (isShutdown.getAndSet(true)) {
             return;
         }
+        stopDelayTimer();
 
        HikariPool p = pool;
         if (p != null) {
@@ -100,7 +101,7 @@ public class SickStoreHikariPool extends SickClient {
 
     public ServerResponseFuture executeAsync(ClientRequest request) throws SQLException {
         ServerResponseFuture future = new ServerResponseFuture(this, request);
-        new RequestHandler(this, future, request).send();
+        future.send();
         return future;
     }
 
@@ -205,7 +205,7 @@ public class ProxyConnection implements Connection
    // **********************************************************************
    //              "Overridden" java.sql.Connection Methods
    // **********************************************************************
-   public SickConnection.ResponseHandler write(SickConnection.ResponseCallback callback) {
+   public int write(SickConnection.ResponseCallback callback) throws SQLException {
        return delegate.write(callback);
    }
 
@@ -90,6 +90,10 @@ public abstract class ClientRequest {
         this.key = key;
     }
 
+    public void setSendedByClientAt(long sendedByClientAt) {
+        this.sendedByClientAt = sendedByClientAt;
+    }
+
     public void setReceivedAt(long receivedAt) {
         this.receivedAt = receivedAt;
     }
@@ -0,0 +1,62 @@
+package de.unihamburg.sickstore.database.messages;
+
+import de.unihamburg.sickstore.backend.Version;
+import de.unihamburg.sickstore.database.WriteConcern;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads a window of records at once, e.g. to preload a data set. The key of
+ * each record is taken from its version.
+ */
+public class ClientRequestBulkLoad extends ClientRequestWrite {
+    private List<Version> versions = new ArrayList<>();
+
+    /** if false, the records are visible for all nodes immediately and the client is not delayed */
+    private boolean generateAnomalies = true;
+
+    /** if false, existing records are overwritten instead of being skipped */
+    private boolean checkExistence = true;
+
+    @SuppressWarnings("unused")
+    private ClientRequestBulkLoad() {
+    }
+
+    public ClientRequestBulkLoad(String table, List<Version> versions, WriteConcern writeConcern,
+                                 String destinationNode, boolean generateAnomalies, boolean checkExistence) {
+        super(table, null, writeConcern, destinationNode);
+        this.versions = versions;
+        this.generateAnomalies = generateAnomalies;
+        this.checkExistence = checkExistence;
+    }
+
+    public List<Version> getVersions() {
+        return versions;
+    }
+
+    public void setVersions(List<Version> versions) {
+        this.versions = versions;
+    }
+
+    public boolean isGenerateAnomalies() {
+        return generateAnomalies;
+    }
+
+    public void setGenerateAnomalies(boolean generateAnomalies) {
+        this.generateAnomalies = generateAnomalies;
+    }
+
+    public boolean isCheckExistence() {
+        return checkExistence;
+    }
+
+    public void setCheckExistence(boolean checkExistence) {
+        this.checkExistence = checkExistence;
+    }
+
+    @Override
+    public String toString() {
+        return "BULKLOAD";
+    }
+}
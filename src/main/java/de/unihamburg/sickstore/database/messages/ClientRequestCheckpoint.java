@@ -0,0 +1,35 @@
+package de.unihamburg.sickstore.database.messages;
+
+/**
+ * Request to take a checkpoint of the store or to roll the store back to the last
+ * checkpoint, e.g. to start every run phase of a benchmark with the data of the
+ * load phase.
+ */
+public class ClientRequestCheckpoint extends ClientRequest {
+    private boolean rollback;
+
+    @SuppressWarnings("unused")
+    private ClientRequestCheckpoint() { super("", "");}
+
+    /**
+     * @param rollback if true, the store is rolled back to the last checkpoint; otherwise
+     *                 a new checkpoint is taken
+     */
+    public ClientRequestCheckpoint(boolean rollback) {
+        super("", "");
+        this.rollback = rollback;
+    }
+
+    public boolean isRollback() {
+        return rollback;
+    }
+
+    public void setRollback(boolean rollback) {
+        this.rollback = rollback;
+    }
+
+    @Override
+    public String toString() {
+        return rollback ? "ROLLBACK" : "CHECKPOINT";
+    }
+}
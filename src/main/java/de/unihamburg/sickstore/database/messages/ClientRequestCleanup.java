@@ -24,6 +24,8 @@ public class ClientRequestCleanup extends ClientRequest {
 
     public String getExportFolder() { return _exportFolder; }
 
+    public void setExportFolder(String exportFolder) { _exportFolder = exportFolder; }
+
     @Override
     public String toString() {
         return "CLEANUP";
@@ -0,0 +1,32 @@
+package de.unihamburg.sickstore.database.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of requests that is sent as a single message. The server processes
+ * every item on its own, i.e. with its own anomaly, and answers with a single
+ * {@link ServerResponseMulti}. The items inherit the destination node and the
+ * send timestamp of the batch.
+ *
+ * @param <T> the type of the batched requests
+ */
+public abstract class ClientRequestMulti<T extends ClientRequest> extends ClientRequest {
+    private List<T> requests = new ArrayList<>();
+
+    public ClientRequestMulti() {
+    }
+
+    public ClientRequestMulti(List<T> requests, String destinationNode) {
+        super(null, null, destinationNode);
+        this.requests = requests;
+    }
+
+    public List<T> getRequests() {
+        return requests;
+    }
+
+    public void setRequests(List<T> requests) {
+        this.requests = requests;
+    }
+}
@@ -0,0 +1,34 @@
+package de.unihamburg.sickstore.database.messages;
+
+import de.unihamburg.sickstore.database.ReadPreference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+public class ClientRequestMultiRead extends ClientRequestMulti<ClientRequestRead> {
+
+    @SuppressWarnings("unused")
+    private ClientRequestMultiRead() {
+    }
+
+    public ClientRequestMultiRead(List<ClientRequestRead> requests, String destinationNode) {
+        super(requests, destinationNode);
+    }
+
+    /**
+     * Reads the same fields of several keys.
+     */
+    public ClientRequestMultiRead(String table, List<String> keys, Set<String> fields, String destinationNode,
+                                  ReadPreference readPreference) {
+        super(new ArrayList<>(keys.size()), destinationNode);
+        for (String key : keys) {
+            getRequests().add(new ClientRequestRead(table, key, fields, destinationNode, readPreference));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MULTIREAD";
+    }
+}
@@ -0,0 +1,22 @@
+package de.unihamburg.sickstore.database.messages;
+
+import java.util.List;
+
+/**
+ * A batch of inserts, updates and deletes.
+ */
+public class ClientRequestMultiWrite extends ClientRequestMulti<ClientRequestWrite> {
+
+    @SuppressWarnings("unused")
+    private ClientRequestMultiWrite() {
+    }
+
+    public ClientRequestMultiWrite(List<ClientRequestWrite> requests, String destinationNode) {
+        super(requests, destinationNode);
+    }
+
+    @Override
+    public String toString() {
+        return "MULTIWRITE";
+    }
+}
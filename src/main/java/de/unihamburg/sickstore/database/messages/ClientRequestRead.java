@@ -37,6 +37,10 @@ public class ClientRequestRead extends ClientRequest {
         return fields;
     }
 
+    public void setReadPreference(ReadPreference readPreference) {
+        this.readPreference = readPreference;
+    }
+
     public void setFields(Set<String> fields) {
         this.fields = fields;
     }
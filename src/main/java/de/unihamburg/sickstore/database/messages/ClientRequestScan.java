@@ -61,6 +61,10 @@ public class ClientRequestScan extends ClientRequest {
     public ReadPreference getReadPreference() {
         return readPreference;
     }
+
+    public void setReadPreference(ReadPreference readPreference) {
+        this.readPreference = readPreference;
+    }
     @Override
     public String toString() {
         return "SCAN";
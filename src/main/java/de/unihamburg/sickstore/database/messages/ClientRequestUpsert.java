@@ -0,0 +1,48 @@
+package de.unihamburg.sickstore.database.messages;
+
+import de.unihamburg.sickstore.backend.Version;
+import de.unihamburg.sickstore.database.WriteConcern;
+
+/**
+ * Stores a version regardless of whether there already is a value under the key.
+ */
+public class ClientRequestUpsert extends ClientRequestWrite {
+    private Version version;
+
+    @SuppressWarnings("unused")
+    private ClientRequestUpsert() {
+    }
+
+    public ClientRequestUpsert(String table, String key, Version version) {
+        super(table, key);
+        this.version = version;
+    }
+
+    public ClientRequestUpsert(String table, String key, Version version, String destinationNode) {
+        super(table, key, destinationNode);
+        this.version = version;
+    }
+
+    public ClientRequestUpsert(String table, String key, Version version, WriteConcern writeConcern) {
+        super(table, key, writeConcern);
+        this.version = version;
+    }
+
+    public ClientRequestUpsert(String table, String key, Version version, WriteConcern writeConcern, String destinationNode) {
+        super(table, key, writeConcern, destinationNode);
+        this.version = version;
+    }
+
+    public Version getVersion() {
+        return version;
+    }
+
+    public void setVersion(Version version) {
+        this.version = version;
+    }
+
+    @Override
+    public String toString() {
+        return "UPSERT";
+    }
+}
@@ -20,6 +20,9 @@ public class ServerResponse {
     /** Indicates how long the requesting client needs to delay after this response (to simulate write latencies) */
     protected Long waitTimeout = 0l;
 
+    /** if true, the server has already held back this response for the waitTimeout */
+    private boolean delayedByServer = false;
+
 
     public ServerResponse() {
         super();
@@ -39,6 +42,10 @@ public class ServerResponse {
         return responseId;
     }
 
+    public void setResponseId(Long responseId) {
+        this.responseId = responseId;
+    }
+
     public Long getSentByClientAt(){return this.sendedByClientAt;}
 
     public void setSentByClientAt(Long sendedByClientAt){this.sendedByClientAt = sendedByClientAt;}
@@ -51,6 +58,14 @@ public class ServerResponse {
         this.waitTimeout = waitTimeout;
     }
 
+    public boolean isDelayedByServer() {
+        return delayedByServer;
+    }
+
+    public void setDelayedByServer(boolean delayedByServer) {
+        this.delayedByServer = delayedByServer;
+    }
+
     @Override
     public String toString() {
         return "RESPONSE";
@@ -0,0 +1,29 @@
+package de.unihamburg.sickstore.database.messages;
+
+public class ServerResponseBulkLoad extends ServerResponse {
+    /** the number of records that have been stored */
+    private int loaded;
+
+    @SuppressWarnings("unused")
+    private ServerResponseBulkLoad() {
+        super();
+    }
+
+    public ServerResponseBulkLoad(int clientRequestID, int loaded) {
+        super(clientRequestID);
+        this.loaded = loaded;
+    }
+
+    public int getLoaded() {
+        return loaded;
+    }
+
+    public void setLoaded(int loaded) {
+        this.loaded = loaded;
+    }
+
+    @Override
+    public String toString() {
+        return "BULKLOAD";
+    }
+}
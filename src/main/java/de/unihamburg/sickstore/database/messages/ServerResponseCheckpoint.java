@@ -0,0 +1,18 @@
+package de.unihamburg.sickstore.database.messages;
+
+public class ServerResponseCheckpoint extends ServerResponse {
+
+    @SuppressWarnings("unused")
+    private ServerResponseCheckpoint() {
+        super();
+    }
+
+    public ServerResponseCheckpoint(int clientRequestID) {
+        super(clientRequestID);
+    }
+
+    @Override
+    public String toString() {
+        return "CHECKPOINT";
+    }
+}
@@ -0,0 +1,30 @@
+package de.unihamburg.sickstore.database.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The responses to the items of a {@link ClientRequestMulti}, in the order of
+ * the items. Failed items are answered by a {@link ServerResponseException}.
+ * The wait timeout of the batch is the longest one of its items.
+ */
+public abstract class ServerResponseMulti extends ServerResponse {
+    private List<ServerResponse> responses = new ArrayList<>();
+
+    public ServerResponseMulti() {
+        super();
+    }
+
+    public ServerResponseMulti(int clientRequestID, List<ServerResponse> responses) {
+        super(clientRequestID);
+        this.responses = responses;
+    }
+
+    public List<ServerResponse> getResponses() {
+        return responses;
+    }
+
+    public void setResponses(List<ServerResponse> responses) {
+        this.responses = responses;
+    }
+}
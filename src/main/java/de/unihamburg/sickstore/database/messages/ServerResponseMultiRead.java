@@ -0,0 +1,20 @@
+package de.unihamburg.sickstore.database.messages;
+
+import java.util.List;
+
+public class ServerResponseMultiRead extends ServerResponseMulti {
+
+    @SuppressWarnings("unused")
+    private ServerResponseMultiRead() {
+        super();
+    }
+
+    public ServerResponseMultiRead(int clientRequestID, List<ServerResponse> responses) {
+        super(clientRequestID, responses);
+    }
+
+    @Override
+    public String toString() {
+        return "MULTIREAD";
+    }
+}
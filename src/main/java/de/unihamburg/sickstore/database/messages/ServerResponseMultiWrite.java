@@ -0,0 +1,20 @@
+package de.unihamburg.sickstore.database.messages;
+
+import java.util.List;
+
+public class ServerResponseMultiWrite extends ServerResponseMulti {
+
+    @SuppressWarnings("unused")
+    private ServerResponseMultiWrite() {
+        super();
+    }
+
+    public ServerResponseMultiWrite(int clientRequestID, List<ServerResponse> responses) {
+        super(clientRequestID, responses);
+    }
+
+    @Override
+    public String toString() {
+        return "MULTIWRITE";
+    }
+}
@@ -1,12 +1,20 @@
 package de.unihamburg.sickstore.database.messages;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import de.unihamburg.sickstore.backend.Version;
 
 public class ServerResponseScan extends ServerResponse {
+    /** the bytes an entry takes besides its key and columns, e.g. for their lengths */
+    private static final int ENTRY_OVERHEAD = 8;
+
     private List<Version> entries;
 
+    /** if true, this response is a frame of a larger result and further frames follow */
+    private boolean more = false;
+
     @SuppressWarnings("unused")
     private ServerResponseScan() {
         super();
@@ -25,6 +33,64 @@ public class ServerResponseScan extends ServerResponse {
         this.entries = entries;
     }
 
+    public boolean hasMore() {
+        return more;
+    }
+
+    public void setMore(boolean more) {
+        this.more = more;
+    }
+
+    /**
+     * Splits this response into frames of roughly at most the given number of
+     * bytes, so that a large result does not have to be sent as a single frame.
+     * This does not stream the result: it is complete in memory before it is
+     * split, and the client only hands it out once all frames have arrived.
+     * The length of an entry is estimated from its key and encoded columns; a
+     * frame holds at least one entry. All but the last frame are marked to be
+     * followed by more frames.
+     *
+     * @param frameLength
+     * @return the frames in order, just this response if it fits into one
+     */
+    public List<ServerResponseScan> split(int frameLength) {
+        List<ServerResponseScan> frames = new ArrayList<>();
+        int from = 0;
+        long length = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            long entryLength = estimateLength(entries.get(i));
+            if (i > from && length + entryLength > frameLength) {
+                frames.add(frame(from, i, true));
+                from = i;
+                length = 0;
+            }
+            length += entryLength;
+        }
+        if (from == 0) {
+            return Collections.singletonList(this);
+        }
+        frames.add(frame(from, entries.size(), false));
+        return frames;
+    }
+
+    private ServerResponseScan frame(int from, int to, boolean more) {
+        ServerResponseScan frame = new ServerResponseScan(
+                clientRequestID, new ArrayList<>(entries.subList(from, to)));
+        frame.setWaitTimeout(getWaitTimeout());
+        frame.setSentByClientAt(getSentByClientAt());
+        frame.setDelayedByServer(isDelayedByServer());
+        frame.setMore(more);
+        return frame;
+    }
+
+    /**
+     * @return the estimated number of bytes the entry takes within a message
+     */
+    private static long estimateLength(Version entry) {
+        String key = entry.getKey();
+        return (key == null ? 0 : key.length()) + entry.getEncodedLength() + ENTRY_OVERHEAD;
+    }
+
     @Override
     public String toString() {
         return "SCAN";
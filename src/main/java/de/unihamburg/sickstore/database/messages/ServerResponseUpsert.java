@@ -0,0 +1,19 @@
+package de.unihamburg.sickstore.database.messages;
+
+public class ServerResponseUpsert extends ServerResponse {
+
+    @SuppressWarnings("unused")
+    private ServerResponseUpsert() {
+        super();
+    }
+
+    public ServerResponseUpsert(int clientRequestID) {
+        super(clientRequestID);
+    }
+
+
+    @Override
+    public String toString() {
+        return "UPSERT";
+    }
+}
@@ -0,0 +1,175 @@
+package de.unihamburg.sickstore.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import de.unihamburg.sickstore.backend.Version;
+import de.unihamburg.sickstore.database.ReadPreference;
+import de.unihamburg.sickstore.database.WriteConcern;
+import de.unihamburg.sickstore.database.messages.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Serializes all client requests. The common fields are written first,
+ * followed by the fields of the concrete request type. The time at which
+ * the server received the request is not sent, as the server assigns it.
+ * The items of a batch only carry their type, table, key and type specific
+ * fields, everything else is inherited from the batch.
+ */
+public class ClientRequestSerializer extends Serializer<ClientRequest> {
+
+    @Override
+    public void write(Kryo kryo, Output output, ClientRequest request) {
+        output.writeVarInt(request.getId(), false);
+        output.writeString(request.getTable());
+        output.writeString(request.getKey());
+        output.writeString(request.getDestinationNode());
+        output.writeVarLong(request.getSendedByClientAt(), false);
+        writeBody(kryo, output, request);
+    }
+
+    private void writeBody(Kryo kryo, Output output, ClientRequest request) {
+        if (request instanceof ClientRequestWrite) {
+            kryo.writeObjectOrNull(output, ((ClientRequestWrite) request).getWriteConcern(), WriteConcern.class);
+        }
+
+        if (request instanceof ClientRequestInsert) {
+            kryo.writeObjectOrNull(output, ((ClientRequestInsert) request).getVersion(), Version.class);
+        } else if (request instanceof ClientRequestUpdate) {
+            kryo.writeObjectOrNull(output, ((ClientRequestUpdate) request).getVersion(), Version.class);
+        } else if (request instanceof ClientRequestUpsert) {
+            kryo.writeObjectOrNull(output, ((ClientRequestUpsert) request).getVersion(), Version.class);
+        } else if (request instanceof ClientRequestRead) {
+            ClientRequestRead read = (ClientRequestRead) request;
+            writeFields(output, read.getFields());
+            kryo.writeObjectOrNull(output, read.getReadPreference(), ReadPreference.class);
+        } else if (request instanceof ClientRequestScan) {
+            ClientRequestScan scan = (ClientRequestScan) request;
+            output.writeBoolean(scan.isAscending());
+            output.writeVarInt(scan.getRecordcount(), true);
+            writeFields(output, scan.getFields());
+            kryo.writeObjectOrNull(output, scan.getReadPreference(), ReadPreference.class);
+        } else if (request instanceof ClientRequestCleanup) {
+            output.writeString(((ClientRequestCleanup) request).getExportFolder());
+        } else if (request instanceof ClientRequestCheckpoint) {
+            output.writeBoolean(((ClientRequestCheckpoint) request).isRollback());
+        } else if (request instanceof ClientRequestBulkLoad) {
+            ClientRequestBulkLoad bulkLoad = (ClientRequestBulkLoad) request;
+            output.writeBoolean(bulkLoad.isGenerateAnomalies());
+            output.writeBoolean(bulkLoad.isCheckExistence());
+            output.writeVarInt(bulkLoad.getVersions().size(), true);
+            for (Version version : bulkLoad.getVersions()) {
+                kryo.writeObject(output, version);
+            }
+        } else if (request instanceof ClientRequestMulti) {
+            List<? extends ClientRequest> items = ((ClientRequestMulti<?>) request).getRequests();
+            output.writeVarInt(items.size(), true);
+            for (ClientRequest item : items) {
+                kryo.writeClass(output, item.getClass());
+                output.writeString(item.getTable());
+                output.writeString(item.getKey());
+                writeBody(kryo, output, item);
+            }
+        } else if (!(request instanceof ClientRequestDelete)) {
+            throw new KryoException("Unsupported request type: " + request.getClass());
+        }
+    }
+
+    @Override
+    public ClientRequest read(Kryo kryo, Input input, Class<ClientRequest> type) {
+        ClientRequest request = kryo.newInstance(type);
+        request.setId(input.readVarInt(false));
+        request.setTable(input.readString());
+        request.setKey(input.readString());
+        request.setDestinationNode(input.readString());
+        request.setSendedByClientAt(input.readVarLong(false));
+        readBody(kryo, input, request);
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readBody(Kryo kryo, Input input, ClientRequest request) {
+        if (request instanceof ClientRequestWrite) {
+            ((ClientRequestWrite) request).setWriteConcern(kryo.readObjectOrNull(input, WriteConcern.class));
+        }
+
+        if (request instanceof ClientRequestInsert) {
+            ((ClientRequestInsert) request).setVersion(kryo.readObjectOrNull(input, Version.class));
+        } else if (request instanceof ClientRequestUpdate) {
+            ((ClientRequestUpdate) request).setVersion(kryo.readObjectOrNull(input, Version.class));
+        } else if (request instanceof ClientRequestUpsert) {
+            ((ClientRequestUpsert) request).setVersion(kryo.readObjectOrNull(input, Version.class));
+        } else if (request instanceof ClientRequestRead) {
+            ClientRequestRead read = (ClientRequestRead) request;
+            read.setFields(readFields(input));
+            read.setReadPreference(kryo.readObjectOrNull(input, ReadPreference.class));
+        } else if (request instanceof ClientRequestScan) {
+            ClientRequestScan scan = (ClientRequestScan) request;
+            scan.setAscending(input.readBoolean());
+            scan.setRecordcount(input.readVarInt(true));
+            scan.setFields(readFields(input));
+            scan.setReadPreference(kryo.readObjectOrNull(input, ReadPreference.class));
+        } else if (request instanceof ClientRequestCleanup) {
+            ((ClientRequestCleanup) request).setExportFolder(input.readString());
+        } else if (request instanceof ClientRequestCheckpoint) {
+            ((ClientRequestCheckpoint) request).setRollback(input.readBoolean());
+        } else if (request instanceof ClientRequestBulkLoad) {
+            ClientRequestBulkLoad bulkLoad = (ClientRequestBulkLoad) request;
+            bulkLoad.setGenerateAnomalies(input.readBoolean());
+            bulkLoad.setCheckExistence(input.readBoolean());
+            int size = input.readVarInt(true);
+            List<Version> versions = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                versions.add(kryo.readObject(input, Version.class));
+            }
+            bulkLoad.setVersions(versions);
+        } else if (request instanceof ClientRequestMulti) {
+            int size = input.readVarInt(true);
+            List<ClientRequest> items = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Registration registration = kryo.readClass(input);
+                ClientRequest item = (ClientRequest) kryo.newInstance(registration.getType());
+                item.setId(i);
+                item.setTable(input.readString());
+                item.setKey(input.readString());
+                item.setDestinationNode(request.getDestinationNode());
+                item.setSendedByClientAt(request.getSendedByClientAt());
+                readBody(kryo, input, item);
+                items.add(item);
+            }
+            ((ClientRequestMulti<ClientRequest>) request).setRequests(items);
+        } else if (!(request instanceof ClientRequestDelete)) {
+            throw new KryoException("Unsupported request type: " + request.getClass());
+        }
+    }
+
+    static void writeFields(Output output, Set<String> fields) {
+        // the size is shifted by one, so that zero can denote null (i.e. all fields)
+        output.writeVarInt(fields == null ? 0 : fields.size() + 1, true);
+        if (fields != null) {
+            for (String field : fields) {
+                output.writeString(field);
+            }
+        }
+    }
+
+    static Set<String> readFields(Input input) {
+        int size = input.readVarInt(true) - 1;
+        if (size < 0) {
+            return null;
+        }
+
+        Set<String> fields = new HashSet<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            fields.add(input.readString());
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,64 @@
+package de.unihamburg.sickstore.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Encodes the columns of a {@link de.unihamburg.sickstore.backend.Version}:
+ * the number of columns followed by the name, class and value of every column.
+ * Every column is encoded as a graph of its own, so that encoded columns do not
+ * depend on what they are embedded in and can be copied into any message.
+ */
+public class ColumnCodec {
+
+    private static final ThreadLocal<Kryo> kryos = ThreadLocal.withInitial(() -> {
+        Kryo kryo = new Kryo();
+        KryoMessageRegistrar.register(kryo);
+        return kryo;
+    });
+
+    private static final ThreadLocal<Output> outputs = ThreadLocal.withInitial(() -> new Output(1024, -1));
+
+    private ColumnCodec() {
+    }
+
+    private static void write(Kryo kryo, Output output, Map<String, Object> columns) {
+        output.writeVarInt(columns.size(), true);
+        for (Map.Entry<String, Object> column : columns.entrySet()) {
+            output.writeString(column.getKey());
+            kryo.writeClassAndObject(output, column.getValue());
+        }
+    }
+
+    private static SortedMap<String, Object> read(Kryo kryo, Input input) {
+        SortedMap<String, Object> columns = new TreeMap<>();
+        int size = input.readVarInt(true);
+        for (int i = 0; i < size; i++) {
+            String column = input.readString();
+            columns.put(column, kryo.readClassAndObject(input));
+        }
+        return columns;
+    }
+
+    /**
+     * Encodes the given columns into a buffer of the calling thread.
+     *
+     * @return the output holding the encoded columns, which is only valid until the
+     * next call on the same thread
+     */
+    public static Output encode(Map<String, Object> columns) {
+        Output output = outputs.get();
+        output.clear();
+        write(kryos.get(), output, columns);
+        return output;
+    }
+
+    public static SortedMap<String, Object> decode(byte[] bytes, int offset, int length) {
+        return read(kryos.get(), new Input(bytes, offset, length));
+    }
+}
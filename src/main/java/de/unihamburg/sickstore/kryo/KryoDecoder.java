@@ -1,45 +1,84 @@
 package de.unihamburg.sickstore.kryo;
 
 import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
-import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
 
 import java.util.List;
 
 /**
+ * Deserializes messages straight from the inbound buffer, without copying
+ * a frame into an intermediate array first. Frames are prefixed with their
+ * length as a varint (see {@link KryoEncoder}).
+ *
  * Created by Steffen Friedrich on 11.08.2016.
  */
 public class KryoDecoder  extends ByteToMessageDecoder {
 
     private final Kryo kryo;
+    private final int maxFrameLength;
+
+    /** the input is reused for all frames, as a decoder is bound to a single channel */
+    private final ByteBufferInput input = new ByteBufferInput();
 
     public KryoDecoder(Kryo kryo) {
+        this(kryo, KryoEncoder.DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public KryoDecoder(Kryo kryo, int maxFrameLength) {
         this.kryo = kryo;
+        this.maxFrameLength = maxFrameLength;
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-
-        if (in.readableBytes() < 2)
-            return;
-
         in.markReaderIndex();
 
-        int len = in.readUnsignedShort();
+        int len = readVarint(in);
+        if (len == -1) {
+            in.resetReaderIndex();
+            return;
+        }
+        if (len > maxFrameLength) {
+            // there is no way to find the next frame, discard everything
+            in.skipBytes(in.readableBytes());
+            throw new TooLongFrameException("Frame of " + len
+                    + " bytes exceeds the limit of " + maxFrameLength + " bytes.");
+        }
 
         if (in.readableBytes() < len) {
             in.resetReaderIndex();
             return;
         }
 
-        byte[] buf = new byte[len];
-        in.readBytes(buf);
-        Input input = new Input(buf);
-        Object object = kryo.readClassAndObject(input);
-        out.add(object);
+        input.setBuffer(in.nioBuffer(in.readerIndex(), len));
+        try {
+            Object object = kryo.readClassAndObject(input);
+            out.add(object);
+        } finally {
+            in.skipBytes(len);
+        }
+    }
 
+    /**
+     * @return the length of the next frame or -1, if the header is not complete yet
+     */
+    private static int readVarint(ByteBuf in) {
+        int value = 0;
+        for (int i = 0; i < KryoEncoder.MAX_HEADER_LENGTH; i++) {
+            if (!in.isReadable()) {
+                return -1;
+            }
+            byte b = in.readByte();
+            value |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new CorruptedFrameException("Malformed frame length.");
     }
-}
\ No newline at end of file
+}
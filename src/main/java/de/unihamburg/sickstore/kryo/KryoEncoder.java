@@ -3,34 +3,114 @@ package de.unihamburg.sickstore.kryo;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Output;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
-import io.netty.handler.codec.MessageToMessageEncoder;
 
-import java.io.ByteArrayOutputStream;
-import java.util.List;
+import java.io.OutputStream;
 
 /**
+ * Serializes messages straight into the outbound buffer. Each frame is
+ * prefixed with its length as a varint; the space for the prefix is reserved
+ * up front and filled in once the size of the message is known.
+ *
  * Created by Friedrich on 11.08.2016.
  */
 public class KryoEncoder extends MessageToByteEncoder<Object> {
+
+    /** a varint-encoded int takes at most 5 bytes */
+    static final int MAX_HEADER_LENGTH = 5;
+
+    /** the default maximum length of a frame (64 MiB) */
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
     private final Kryo kryo;
+    private final int maxFrameLength;
+
+    /** the output is reused for all messages, as an encoder is bound to a single channel */
+    private final Output output = new Output(4096);
+    private final ByteBufOutputStream stream = new ByteBufOutputStream();
 
     public KryoEncoder (Kryo kryo) {
+        this(kryo, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public KryoEncoder (Kryo kryo, int maxFrameLength) {
         this.kryo = kryo;
+        this.maxFrameLength = maxFrameLength;
     }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, Object in, ByteBuf out) throws Exception {
-        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-        Output output = new Output(outStream, 4096);
+        int lengthIndex = out.writerIndex();
+        out.writeZero(MAX_HEADER_LENGTH);
+
+        stream.buffer = out;
+        try {
+            output.setOutputStream(stream);
+            kryo.writeClassAndObject(output, in);
+            output.flush();
+        } finally {
+            stream.buffer = null;
+        }
+
+        int length = out.writerIndex() - lengthIndex - MAX_HEADER_LENGTH;
+        if (length > maxFrameLength) {
+            throw new EncoderException("Cannot send " + in + "; the message has " + length
+                    + " bytes, but frames are limited to " + maxFrameLength + " bytes.");
+        }
+
+        if (lengthIndex == out.readerIndex()) {
+            // the frame starts the buffer, so the unused part of the header can be skipped
+            int headerIndex = lengthIndex + MAX_HEADER_LENGTH - varintLength(length);
+            writeVarint(out, headerIndex, length);
+            out.readerIndex(headerIndex);
+        } else {
+            writePaddedVarint(out, lengthIndex, length);
+        }
+    }
+
+    static int varintLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private static void writeVarint(ByteBuf out, int index, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.setByte(index++, (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.setByte(index, value);
+    }
+
+    /**
+     * Writes the value as a varint that uses all {@link #MAX_HEADER_LENGTH} bytes.
+     */
+    private static void writePaddedVarint(ByteBuf out, int index, int value) {
+        for (int i = 0; i < MAX_HEADER_LENGTH - 1; i++) {
+            out.setByte(index + i, (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.setByte(index + MAX_HEADER_LENGTH - 1, value);
+    }
+
+    /**
+     * Appends everything that is flushed by the kryo output to a buffer.
+     */
+    private static final class ByteBufOutputStream extends OutputStream {
+        private ByteBuf buffer;
 
-        kryo.writeClassAndObject(output, in);
-        output.flush();
+        @Override
+        public void write(int b) {
+            buffer.writeByte(b);
+        }
 
-        byte[] outArray = outStream.toByteArray();
-        out.writeShort(outArray.length);
-        out.writeBytes(outArray);
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buffer.writeBytes(b, off, len);
+        }
     }
 }
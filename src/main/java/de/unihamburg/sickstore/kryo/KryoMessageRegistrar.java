@@ -1,13 +1,8 @@
 package de.unihamburg.sickstore.kryo;
 
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
@@ -33,70 +28,66 @@ import de.unihamburg.sickstore.database.messages.exception.UpdateException;
 public class KryoMessageRegistrar {
 
     // This registers objects that are going to be sent over the network.
+    // The IDs are part of the wire format: never change or reuse an ID, only add new ones.
     static public void register(Kryo kryo) {
-        List<Class<?>> classes = new ArrayList<Class<?>>();
-
-        // register some primitives etc.
-        classes.add(ArrayList.class);
-        classes.add(AtomicLong.class);
-        classes.add(byte[].class);
-        classes.add(ConcurrentHashMap.class);
-        classes.add(Version.class);
-        classes.add(Exception.class);
-        classes.add(HashMap.class);
-        classes.add(HashSet.class);
-        classes.add(IllegalArgumentException.class);
-        classes.add(Long.class);
-        classes.add(Map.class);
-        classes.add(NullPointerException.class);
-        classes.add(Object.class);
-        classes.add(String.class);
-        classes.add(String[].class);
-        classes.add(TreeMap.class);
+        // register some primitives etc. (e.g. for column values)
+        kryo.register(ArrayList.class, 20);
+        kryo.register(AtomicLong.class, 21);
+        kryo.register(byte[].class, 22);
+        kryo.register(ConcurrentHashMap.class, 23);
+        kryo.register(Exception.class, 24);
+        kryo.register(HashMap.class, 25);
+        kryo.register(HashSet.class, 26);
+        kryo.register(IllegalArgumentException.class, 27);
+        kryo.register(Long.class, 28);
+        kryo.register(NullPointerException.class, 29);
+        kryo.register(Object.class, 30);
+        kryo.register(String[].class, 31);
+        kryo.register(TreeMap.class, 32);
 
         // register messages
-        classes.add(WriteConcern.class);
-        classes.add(ReadPreference.class);
-        classes.add(ClientRequest.class);
-        classes.add(ClientRequestDelete.class);
-        classes.add(ClientRequestInsert.class);
-        classes.add(ClientRequestRead.class);
-        classes.add(ClientRequestScan.class);
-        classes.add(ClientRequestUpdate.class);
-        classes.add(ClientRequestCleanup.class);
-        classes.add(DatabaseException.class);
-        classes.add(DeleteException.class);
-        classes.add(DoubleVersionException.class);
-        classes.add(InsertException.class);
-        classes.add(NoColumnProvidedException.class);
-        classes.add(NoKeyProvidedException.class);
-        classes.add(NoValueProvidedException.class);
-        classes.add(NotConnectedException.class);
-        classes.add(ServerResponse.class);
-        classes.add(ServerResponseDelete.class);
-        classes.add(ServerResponseException.class);
-        classes.add(ServerResponseInsert.class);
-        classes.add(ServerResponseRead.class);
-        classes.add(ServerResponseScan.class);
-        classes.add(ServerResponseUpdate.class);
-        classes.add(ServerResponseCleanup.class);
-        classes.add(UnknownMessageTypeException.class);
-        classes.add(UpdateException.class);
+        kryo.register(Version.class, new VersionSerializer(), 40);
+        kryo.register(WriteConcern.class, new WriteConcernSerializer(), 41);
+        kryo.register(ReadPreference.class, new ReadPreferenceSerializer(), 42);
 
-        // register exceptions
-        classes.add(DatabaseException.class);
-        classes.add(DeleteException.class);
-        classes.add(DoubleVersionException.class);
-        classes.add(InsertException.class);
-        classes.add(NoColumnProvidedException.class);
-        classes.add(NoKeyProvidedException.class);
-        classes.add(NoValueProvidedException.class);
-        classes.add(NotConnectedException.class);
-        classes.add(UnknownMessageTypeException.class);
-        classes.add(UpdateException.class);
+        ClientRequestSerializer requestSerializer = new ClientRequestSerializer();
+        kryo.register(ClientRequestDelete.class, requestSerializer, 50);
+        kryo.register(ClientRequestInsert.class, requestSerializer, 51);
+        kryo.register(ClientRequestRead.class, requestSerializer, 52);
+        kryo.register(ClientRequestScan.class, requestSerializer, 53);
+        kryo.register(ClientRequestUpdate.class, requestSerializer, 54);
+        kryo.register(ClientRequestCleanup.class, requestSerializer, 55);
+        kryo.register(ClientRequestMultiRead.class, requestSerializer, 56);
+        kryo.register(ClientRequestMultiWrite.class, requestSerializer, 57);
+        kryo.register(ClientRequestBulkLoad.class, requestSerializer, 58);
+        kryo.register(ClientRequestUpsert.class, requestSerializer, 59);
+        kryo.register(ClientRequestCheckpoint.class, requestSerializer, 60);
 
-        for (Class<?> c : classes) {
-            kryo.register(c);
-        }
+        ServerResponseSerializer responseSerializer = new ServerResponseSerializer();
+        kryo.register(ServerResponse.class, responseSerializer, 70);
+        kryo.register(ServerResponseDelete.class, responseSerializer, 71);
+        kryo.register(ServerResponseException.class, responseSerializer, 72);
+        kryo.register(ServerResponseInsert.class, responseSerializer, 73);
+        kryo.register(ServerResponseRead.class, responseSerializer, 74);
+        kryo.register(ServerResponseScan.class, responseSerializer, 75);
+        kryo.register(ServerResponseUpdate.class, responseSerializer, 76);
+        kryo.register(ServerResponseCleanup.class, responseSerializer, 77);
+        kryo.register(ServerResponseMultiRead.class, responseSerializer, 78);
+        kryo.register(ServerResponseMultiWrite.class, responseSerializer, 79);
+        kryo.register(ServerResponseBulkLoad.class, responseSerializer, 80);
+        kryo.register(ServerResponseUpsert.class, responseSerializer, 81);
+        kryo.register(ServerResponseCheckpoint.class, responseSerializer, 82);
+
+        // register exceptions
+        kryo.register(DatabaseException.class, 90);
+        kryo.register(DeleteException.class, 91);
+        kryo.register(DoubleVersionException.class, 92);
+        kryo.register(InsertException.class, 93);
+        kryo.register(NoColumnProvidedException.class, 94);
+        kryo.register(NoKeyProvidedException.class, 95);
+        kryo.register(NoValueProvidedException.class, 96);
+        kryo.register(NotConnectedException.class, 97);
+        kryo.register(UnknownMessageTypeException.class, 98);
+        kryo.register(UpdateException.class, 99);
     }
 }
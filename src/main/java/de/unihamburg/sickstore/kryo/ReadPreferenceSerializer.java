@@ -0,0 +1,42 @@
+package de.unihamburg.sickstore.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import de.unihamburg.sickstore.database.ReadPreference;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReadPreferenceSerializer extends Serializer<ReadPreference> {
+
+    @Override
+    public void write(Kryo kryo, Output output, ReadPreference readPreference) {
+        output.writeString(readPreference.getName());
+
+        List<String> tagSets = readPreference.getTagSetList();
+        // the size is shifted by one, so that zero can denote null
+        output.writeVarInt(tagSets == null ? 0 : tagSets.size() + 1, true);
+        if (tagSets != null) {
+            for (String tagSet : tagSets) {
+                output.writeString(tagSet);
+            }
+        }
+    }
+
+    @Override
+    public ReadPreference read(Kryo kryo, Input input, Class<ReadPreference> type) {
+        String name = input.readString();
+
+        List<String> tagSets = null;
+        int size = input.readVarInt(true) - 1;
+        if (size >= 0) {
+            tagSets = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                tagSets.add(input.readString());
+            }
+        }
+        return new ReadPreference(name, tagSets);
+    }
+}
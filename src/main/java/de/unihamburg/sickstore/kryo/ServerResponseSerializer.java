@@ -0,0 +1,112 @@
+package de.unihamburg.sickstore.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import de.unihamburg.sickstore.backend.Version;
+import de.unihamburg.sickstore.database.messages.ServerResponse;
+import de.unihamburg.sickstore.database.messages.ServerResponseBulkLoad;
+import de.unihamburg.sickstore.database.messages.ServerResponseException;
+import de.unihamburg.sickstore.database.messages.ServerResponseMulti;
+import de.unihamburg.sickstore.database.messages.ServerResponseRead;
+import de.unihamburg.sickstore.database.messages.ServerResponseScan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializes all server responses. The common fields are written first,
+ * followed by the fields of the concrete response type; responses to writes
+ * do not carry any further fields. The items of a batch only carry their
+ * type, wait timeout and type specific fields.
+ */
+public class ServerResponseSerializer extends Serializer<ServerResponse> {
+
+    @Override
+    public void write(Kryo kryo, Output output, ServerResponse response) {
+        output.writeVarInt(response.getClientRequestID(), false);
+        output.writeVarLong(response.getResponseId(), true);
+        output.writeVarLong(response.getSentByClientAt(), false);
+        output.writeVarLong(response.getWaitTimeout() == null ? 0 : response.getWaitTimeout(), true);
+        output.writeBoolean(response.isDelayedByServer());
+        writeBody(kryo, output, response);
+    }
+
+    private void writeBody(Kryo kryo, Output output, ServerResponse response) {
+        if (response instanceof ServerResponseRead) {
+            kryo.writeObjectOrNull(output, ((ServerResponseRead) response).getVersion(), Version.class);
+        } else if (response instanceof ServerResponseScan) {
+            ServerResponseScan scan = (ServerResponseScan) response;
+            output.writeBoolean(scan.hasMore());
+
+            List<Version> entries = scan.getEntries();
+            output.writeVarInt(entries.size(), true);
+            for (Version entry : entries) {
+                kryo.writeObject(output, entry);
+            }
+        } else if (response instanceof ServerResponseException) {
+            ServerResponseException exception = (ServerResponseException) response;
+            output.writeString(exception.getClassName());
+            output.writeString(exception.getMessage());
+        } else if (response instanceof ServerResponseBulkLoad) {
+            output.writeVarInt(((ServerResponseBulkLoad) response).getLoaded(), true);
+        } else if (response instanceof ServerResponseMulti) {
+            List<ServerResponse> items = ((ServerResponseMulti) response).getResponses();
+            output.writeVarInt(items.size(), true);
+            for (ServerResponse item : items) {
+                kryo.writeClass(output, item.getClass());
+                output.writeVarLong(item.getWaitTimeout() == null ? 0 : item.getWaitTimeout(), true);
+                writeBody(kryo, output, item);
+            }
+        }
+    }
+
+    @Override
+    public ServerResponse read(Kryo kryo, Input input, Class<ServerResponse> type) {
+        ServerResponse response = kryo.newInstance(type);
+        response.setStreamId(input.readVarInt(false));
+        response.setResponseId(input.readVarLong(true));
+        response.setSentByClientAt(input.readVarLong(false));
+        response.setWaitTimeout(input.readVarLong(true));
+        response.setDelayedByServer(input.readBoolean());
+        readBody(kryo, input, response);
+        return response;
+    }
+
+    private void readBody(Kryo kryo, Input input, ServerResponse response) {
+        if (response instanceof ServerResponseRead) {
+            ((ServerResponseRead) response).setVersion(kryo.readObjectOrNull(input, Version.class));
+        } else if (response instanceof ServerResponseScan) {
+            ServerResponseScan scan = (ServerResponseScan) response;
+            scan.setMore(input.readBoolean());
+
+            int size = input.readVarInt(true);
+            List<Version> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                entries.add(kryo.readObject(input, Version.class));
+            }
+            scan.setEntries(entries);
+        } else if (response instanceof ServerResponseException) {
+            ServerResponseException exception = (ServerResponseException) response;
+            exception.setClassName(input.readString());
+            exception.setMessage(input.readString());
+        } else if (response instanceof ServerResponseBulkLoad) {
+            ((ServerResponseBulkLoad) response).setLoaded(input.readVarInt(true));
+        } else if (response instanceof ServerResponseMulti) {
+            int size = input.readVarInt(true);
+            List<ServerResponse> items = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Registration registration = kryo.readClass(input);
+                ServerResponse item = (ServerResponse) kryo.newInstance(registration.getType());
+                item.setStreamId(response.getStreamId());
+                item.setSentByClientAt(response.getSentByClientAt());
+                item.setWaitTimeout(input.readVarLong(true));
+                readBody(kryo, input, item);
+                items.add(item);
+            }
+            ((ServerResponseMulti) response).setResponses(items);
+        }
+    }
+}
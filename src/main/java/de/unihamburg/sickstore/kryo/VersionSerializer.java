@@ -0,0 +1,57 @@
+package de.unihamburg.sickstore.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import de.unihamburg.sickstore.backend.Version;
+import de.unihamburg.sickstore.backend.offheap.OffHeapBlob;
+
+/**
+ * Serializes the key and the columns of a {@link Version}. Everything else
+ * (e.g. writtenAt, visibility) is assigned by the server and only meaningful
+ * there.
+ *
+ * The columns are encoded on their own by the {@link ColumnCodec} and prefixed
+ * with their length, so that read versions keep them in encoded form and pass
+ * them on without decoding and encoding them again.
+ */
+public class VersionSerializer extends Serializer<Version> {
+
+    @Override
+    public void write(Kryo kryo, Output output, Version version) {
+        output.writeString(version.getKey());
+        if (version.isNull()) {
+            output.writeBoolean(true);
+            return;
+        }
+
+        output.writeBoolean(false);
+        OffHeapBlob offHeapValues = version.getOffHeapValues();
+        byte[] encodedValues = version.getEncodedValues();
+        if (offHeapValues != null) {
+            output.writeVarInt(offHeapValues.length(), true);
+            offHeapValues.writeTo(output);
+        } else if (encodedValues != null) {
+            output.writeVarInt(encodedValues.length, true);
+            output.writeBytes(encodedValues);
+        } else {
+            Output encoded = ColumnCodec.encode(version.getValues());
+            output.writeVarInt(encoded.position(), true);
+            output.writeBytes(encoded.getBuffer(), 0, encoded.position());
+        }
+    }
+
+    @Override
+    public Version read(Kryo kryo, Input input, Class<Version> type) {
+        String key = input.readString();
+        if (input.readBoolean()) {
+            return new Version(key, null, -1, null, true);
+        }
+
+        Version version = new Version();
+        version.setKey(key);
+        version.setEncodedValues(input.readBytes(input.readVarInt(true)));
+        return version;
+    }
+}
@@ -0,0 +1,28 @@
+package de.unihamburg.sickstore.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import de.unihamburg.sickstore.database.WriteConcern;
+
+public class WriteConcernSerializer extends Serializer<WriteConcern> {
+
+    @Override
+    public void write(Kryo kryo, Output output, WriteConcern writeConcern) {
+        output.writeVarInt(writeConcern.getReplicaAcknowledgement(), true);
+        output.writeString(writeConcern.getReplicaAcknowledgementTagSet());
+        output.writeBoolean(writeConcern.isJournaling());
+        output.writeVarInt(writeConcern.getTimeout(), true);
+    }
+
+    @Override
+    public WriteConcern read(Kryo kryo, Input input, Class<WriteConcern> type) {
+        WriteConcern writeConcern = new WriteConcern();
+        writeConcern.setReplicaAcknowledgement(input.readVarInt(true));
+        writeConcern.setReplicaAcknowledgementTagSet(input.readString());
+        writeConcern.setJournaling(input.readBoolean());
+        writeConcern.setTimeout(input.readVarInt(true));
+        return writeConcern;
+    }
+}
@@ -0,0 +1,171 @@
+package de.unihamburg.sickstore.backend;
+
+import de.unihamburg.sickstore.backend.anomaly.staleness.StalenessMap;
+import de.unihamburg.sickstore.backend.timer.FakeTimeHandler;
+import de.unihamburg.sickstore.database.Node;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private Node primary;
+    private Node secondary;
+    private List<Node> nodes;
+
+    @Before
+    public void setUp() {
+        file = folder.getRoot().toPath().resolve("sickstore.journal");
+        primary = new Node("primary");
+        secondary = new Node("secondary");
+        Node.assignOrdinals(Arrays.asList(primary, secondary));
+        nodes = Arrays.asList(primary, secondary);
+    }
+
+    private Version version(String key, long writtenAt, String value) {
+        StalenessMap visibility = new StalenessMap();
+        visibility.put(primary, 0l);
+        visibility.put(secondary, 100l);
+
+        Version version = new Version(key, primary, writtenAt, visibility);
+        version.put("value", value);
+        return version;
+    }
+
+    /**
+     * All writes that have been synced are replayed with their visibility.
+     */
+    @Test
+    public void testReplay() throws Exception {
+        Journal journal = new Journal(file, 10);
+        assertEquals(0, journal.replay(new Store(), nodes));
+        journal.append("usertable", version("key", 0, "first"));
+        journal.append("usertable", version("key", 50, "second"));
+        journal.append("usertable", new Version("deleted", primary, 0, null, true));
+        journal.appendBulkLoad("usertable", version("key", 60, "skipped"));
+        journal.sync().get(1, TimeUnit.SECONDS);
+        journal.close();
+
+        Node restoredPrimary = new Node("primary");
+        Node restoredSecondary = new Node("secondary");
+        Node.assignOrdinals(Arrays.asList(restoredPrimary, restoredSecondary));
+        Store store = new Store(new FakeTimeHandler());
+        journal = new Journal(file, 0);
+        assertEquals(4, journal.replay(store, Arrays.asList(restoredPrimary, restoredSecondary)));
+
+        Table table = store.getTable("usertable");
+        assertEquals(2, table.getVersionSet("key").size());
+        assertEquals("second", table.get(restoredPrimary, "key", 60, false).get("value"));
+        assertEquals("first", table.get(restoredSecondary, "key", 120, false).get("value"));
+        assertTrue(table.get(restoredPrimary, "deleted", 0, false).isNull());
+
+        // the journal is appended to after a replay
+        journal.append("usertable", version("other", 0, "other"));
+        journal.sync().get(1, TimeUnit.SECONDS);
+        journal.close();
+        assertEquals(5, new Journal(file, 0).replay(new Store(), nodes));
+    }
+
+    /**
+     * Records appended concurrently are all replayed intact.
+     */
+    @Test
+    public void testConcurrentAppends() throws Exception {
+        Journal journal = new Journal(file, 0);
+        journal.replay(new Store(), nodes);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> appends = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String prefix = "t" + t + "-";
+            appends.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    journal.append("usertable", version(prefix + i, 0, prefix + i));
+                }
+            }));
+        }
+        for (Future<?> append : appends) {
+            append.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        journal.sync().get(1, TimeUnit.SECONDS);
+        journal.close();
+
+        Store store = new Store();
+        assertEquals(2000, new Journal(file, 0).replay(store, nodes));
+        assertEquals("t3-499", store.getTable("usertable").get(primary, "t3-499", 0, false).get("value"));
+    }
+
+    /**
+     * A record that has only been written partially ends the journal and is cut off.
+     */
+    @Test
+    public void testPartialRecord() throws Exception {
+        Journal journal = new Journal(file, 0);
+        journal.replay(new Store(), nodes);
+        journal.append("usertable", version("a", 0, "a"));
+        journal.append("usertable", version("b", 0, "b"));
+        journal.close();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        Store store = new Store();
+        journal = new Journal(file, 0);
+        assertEquals(1, journal.replay(store, nodes));
+        assertEquals("a", store.getTable("usertable").get(primary, "a", 0, false).get("value"));
+        assertEquals(null, store.getTable("usertable").getVersionSet("b"));
+
+        journal.append("usertable", version("c", 0, "c"));
+        journal.close();
+        assertEquals(2, new Journal(file, 0).replay(new Store(), nodes));
+    }
+
+    /**
+     * A torn length field ends the journal instead of failing the replay.
+     */
+    @Test
+    public void testCorruptLength() throws Exception {
+        Journal journal = new Journal(file, 0);
+        journal.replay(new Store(), nodes);
+        journal.append("usertable", version("a", 0, "a"));
+        journal.append("usertable", version("b", 0, "b"));
+        journal.close();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, 0);
+            long second = 8 + length.getInt(0);
+            channel.write((ByteBuffer) ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE).flip(), second);
+        }
+
+        Store store = new Store();
+        assertEquals(1, new Journal(file, 0).replay(store, nodes));
+        assertEquals(null, store.getTable("usertable").getVersionSet("b"));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write((ByteBuffer) ByteBuffer.allocate(4).putInt(-1).flip(), 0);
+        }
+        assertEquals(0, new Journal(file, 0).replay(new Store(), nodes));
+    }
+}
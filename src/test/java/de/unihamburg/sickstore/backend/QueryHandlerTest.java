@@ -1,7 +1,16 @@
 package de.unihamburg.sickstore.backend;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.unihamburg.sickstore.backend.anomaly.MongoDbAnomalies;
 import de.unihamburg.sickstore.backend.timer.FakeTimeHandler;
@@ -13,6 +22,7 @@ import de.unihamburg.sickstore.SickstoreTestCase;
 import de.unihamburg.sickstore.database.messages.exception.DatabaseException;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -286,4 +296,107 @@ public class QueryHandlerTest extends SickstoreTestCase {
 
         assertEquals(node2, bob.getWrittenBy());
     }
+
+    /**
+     * The items of a batch are processed independently, each with its own staleness.
+     */
+    @Test
+    public void testMultiRequests() throws Exception {
+        List<ClientRequestWrite> writes = new ArrayList<>();
+        for (String key : new String[] {"a", "b", "c"}) {
+            Version version = new Version();
+            version.put("name", key);
+            writes.add(new ClientRequestInsert("", key, version, node1.getName()));
+        }
+        writes.add(new ClientRequestUpdate("", "missing", new Version(), new WriteConcern(), node1.getName()));
+
+        ServerResponseMultiWrite written = (ServerResponseMultiWrite) sendRequest(
+                new ClientRequestMultiWrite(writes, node1.getName()));
+        assertEquals(4, written.getResponses().size());
+        assertTrue(written.getResponses().get(0) instanceof ServerResponseInsert);
+        assertTrue(written.getResponses().get(2) instanceof ServerResponseInsert);
+        assertTrue(written.getResponses().get(3) instanceof ServerResponseException);
+
+        List<String> keys = Arrays.asList("c", "missing", "a");
+        ServerResponseMultiRead read = (ServerResponseMultiRead) sendRequest(
+                new ClientRequestMultiRead("", keys, null, node1.getName(), null));
+        assertEquals(3, read.getResponses().size());
+        assertEquals("c", ((ServerResponseRead) read.getResponses().get(0)).getVersion().get("name"));
+        assertTrue(((ServerResponseRead) read.getResponses().get(1)).getVersion().isNull());
+        assertEquals("a", ((ServerResponseRead) read.getResponses().get(2)).getVersion().get("name"));
+
+        // the writes are not yet visible for the other nodes
+        read = (ServerResponseMultiRead) sendRequest(new ClientRequestMultiRead("", keys, null, node2.getName(), null));
+        assertTrue(((ServerResponseRead) read.getResponses().get(0)).getVersion().isNull());
+        ((FakeTimeHandler) timeHandler).increaseTime(500);
+        read = (ServerResponseMultiRead) sendRequest(new ClientRequestMultiRead("", keys, null, node2.getName(), null));
+        assertEquals("c", ((ServerResponseRead) read.getResponses().get(0)).getVersion().get("name"));
+    }
+
+    /**
+     * Checkpoints and rollbacks that are requested by many threads at the same time
+     * complete one after another instead of waiting for each other.
+     */
+    @Test
+    public void testConcurrentCheckpoints() throws Exception {
+        QueryHandler handler = new QueryHandler(new Store(timeHandler), anomalyGenerator, new HashSet<>(Arrays.asList(node1, node2, node3)),
+                timeHandler, 0, false, false, false, 4);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            assertTrue(handler.processQuery(new ClientRequestCheckpoint(false)) instanceof ServerResponseCheckpoint);
+
+            List<Future<ServerResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                boolean rollback = i % 2 == 0;
+                responses.add(clients.submit(() -> handler.processQuery(new ClientRequestCheckpoint(rollback))));
+            }
+            for (Future<ServerResponse> response : responses) {
+                assertTrue(response.get(10, TimeUnit.SECONDS) instanceof ServerResponseCheckpoint);
+            }
+        } finally {
+            clients.shutdownNow();
+            handler.shutdown();
+        }
+    }
+
+    /**
+     * The garbage collector is paused along with the partitions while a checkpoint
+     * is taken or rolled back.
+     */
+    @Test
+    public void testCheckpointPausesGarbageCollection() throws Exception {
+        AtomicInteger pruning = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        Store store = new Store(timeHandler) {
+            @Override
+            public void prune() {
+                pruning.incrementAndGet();
+                try {
+                    Thread.sleep(5);
+                    super.prune();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    pruning.decrementAndGet();
+                }
+            }
+
+            @Override
+            public synchronized void checkpoint() {
+                overlapped.compareAndSet(false, pruning.get() > 0);
+                super.checkpoint();
+            }
+        };
+        QueryHandler handler = new QueryHandler(store, anomalyGenerator, new HashSet<>(Arrays.asList(node1, node2, node3)),
+                timeHandler, 0, false, false, false, 2);
+        try {
+            handler.startGarbageCollection(1);
+            for (int i = 0; i < 50; i++) {
+                assertTrue(handler.processQuery(new ClientRequestCheckpoint(false)) instanceof ServerResponseCheckpoint);
+            }
+            assertFalse(overlapped.get());
+        } finally {
+            handler.shutdown();
+        }
+    }
 }
@@ -0,0 +1,182 @@
+package de.unihamburg.sickstore.backend;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RadixTreeTest {
+
+    private final RadixTree tree = new RadixTree();
+    private final TreeMap<String, VersionSet> expected = new TreeMap<>();
+
+    private void put(String key) {
+        VersionSet versions = new VersionSet();
+        tree.put(key, versions);
+        expected.put(key, versions);
+        assertSame(versions, tree.get(key));
+    }
+
+    private void remove(String key) {
+        VersionSet versions = expected.remove(key);
+        assertEquals(versions != null, tree.remove(key, versions));
+        assertNull(tree.get(key));
+    }
+
+    private void assertEntries(String key, boolean asc) {
+        NavigableMap<String, VersionSet> map = expected;
+        if (key != null) {
+            map = asc ? expected.tailMap(key, true) : expected.headMap(key, true);
+        }
+        if (!asc) {
+            map = map.descendingMap();
+        }
+
+        List<Map.Entry<String, VersionSet>> entries = new ArrayList<>();
+        Iterator<Map.Entry<String, VersionSet>> cursor = tree.entries(key, asc);
+        while (cursor.hasNext()) {
+            entries.add(cursor.next());
+        }
+        assertEquals(new ArrayList<>(map.entrySet()), entries);
+    }
+
+    /**
+     * Keys are iterated in the order of {@link String#compareTo(String)}, starting at
+     * any key, including keys that are prefixes of each other and keys with chars
+     * that take more than one byte.
+     */
+    @Test
+    public void testOrder() {
+        String[] keys = {"user1", "user10", "user", "user2", "use", "", "a", "\u00e4", "\u20ac", "\uffff",
+                "\ud83d\ude00", "user1\u0000", "user19"};
+        for (String key : keys) {
+            put(key);
+        }
+        assertEntries(null, true);
+        assertEntries(null, false);
+        for (String key : keys) {
+            assertEntries(key, true);
+            assertEntries(key, false);
+            assertEntries(key + "0", true);
+            assertEntries(key + "0", false);
+        }
+        assertEntries("user15", true);
+        assertEntries("user15", false);
+        assertEntries("zzz", false);
+        assertFalse(tree.entries("\uffff0", true).hasNext());
+    }
+
+    /**
+     * Random YCSB-like keys are added and removed; copies are not affected by later
+     * updates.
+     */
+    @Test
+    public void testUpdates() {
+        Random random = new Random(42);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String key = "user" + Math.abs(random.nextLong() % 100000);
+            keys.add(key);
+            put(key);
+        }
+        KeyIndex copy = tree.copy();
+        TreeMap<String, VersionSet> copied = new TreeMap<>(expected);
+
+        for (int i = 0; i < 1000; i++) {
+            remove(keys.get(random.nextInt(keys.size())));
+        }
+        put("user");
+        assertEntries(null, true);
+        assertEntries("user5", true);
+        assertEntries("user5", false);
+
+        List<Map.Entry<String, VersionSet>> entries = new ArrayList<>();
+        copy.entries(null, true).forEachRemaining(entries::add);
+        assertEquals(new ArrayList<>(copied.entrySet()), entries);
+
+        for (String key : keys) {
+            remove(key);
+        }
+        remove("user");
+        assertFalse(tree.entries(null, true).hasNext());
+        assertSame(copied.get(keys.get(0)), copy.get(keys.get(0)));
+    }
+
+    /**
+     * Point operations see the chain of a key that is only replaced if it is the
+     * expected one.
+     */
+    @Test
+    public void testPointOperations() {
+        VersionSet first = new VersionSet();
+        VersionSet second = new VersionSet();
+        assertNull(tree.putIfAbsent("user1", first));
+        assertSame(first, tree.putIfAbsent("user1", second));
+        assertNull(tree.get("user"));
+        assertNull(tree.get("user10"));
+        assertFalse(tree.remove("user1", second));
+        assertSame(first, tree.get("user1"));
+
+        assertNull(tree.putIfAbsent("user", second));
+        assertTrue(tree.remove("user1", first));
+        assertNull(tree.get("user1"));
+        assertSame(second, tree.get("user"));
+    }
+
+    /**
+     * Threads that add and remove keys with shared prefixes at the same time do not
+     * lose each other's updates.
+     */
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            tasks.add(executor.submit(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    String key = "user" + i + "-" + thread;
+                    VersionSet versions = new VersionSet();
+                    assertNull(tree.putIfAbsent(key, versions));
+                    if (i % 2 == 0) {
+                        assertTrue(tree.remove(key, versions));
+                    }
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        List<String> keys = new ArrayList<>();
+        tree.entries(null, true).forEachRemaining(entry -> keys.add(entry.getKey()));
+        List<String> remaining = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            for (int i = 1; i < 5000; i += 2) {
+                String key = "user" + i + "-" + t;
+                assertTrue(key, tree.get(key) != null);
+                remaining.add(key);
+            }
+        }
+        Collections.sort(remaining);
+        assertEquals(remaining, keys);
+    }
+}
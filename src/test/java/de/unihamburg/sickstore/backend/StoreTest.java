@@ -0,0 +1,226 @@
+package de.unihamburg.sickstore.backend;
+
+import de.unihamburg.sickstore.backend.anomaly.staleness.StalenessMap;
+import de.unihamburg.sickstore.backend.offheap.OffHeapStore;
+import de.unihamburg.sickstore.backend.offheap.SlabAllocator;
+import de.unihamburg.sickstore.backend.timer.FakeTimeHandler;
+import de.unihamburg.sickstore.config.InstanceFactory;
+import de.unihamburg.sickstore.database.Node;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeTimeHandler timeHandler;
+    private Store store;
+    private Node primary;
+    private Node secondary;
+
+    @Before
+    public void setUp() {
+        timeHandler = new FakeTimeHandler();
+        store = new Store(timeHandler);
+        primary = new Node("primary");
+        secondary = new Node("secondary");
+        Node.assignOrdinals(Arrays.asList(primary, secondary));
+    }
+
+    private Version version(String key, long writtenAt, String value) {
+        StalenessMap visibility = new StalenessMap();
+        visibility.put(primary, 0l);
+        visibility.put(secondary, 100l);
+
+        Version version = new Version(key, primary, writtenAt, visibility);
+        version.put("value", value);
+        return version;
+    }
+
+    /**
+     * Keys of different tables neither collide nor are they scanned together, and
+     * dropping or clearing a table leaves all other tables untouched.
+     */
+    @Test
+    public void testTables() throws Exception {
+        Table users = store.getTable("users");
+        Table orders = store.getTable("orders");
+        users.insert(primary, "key", version("key", 0, "user"));
+        orders.insert(primary, "key", version("key", 0, "order"));
+        orders.insert(primary, "other", version("other", 0, "other"));
+
+        assertEquals("user", users.get(primary, "key", 0, false).get("value"));
+        assertEquals("order", orders.get(primary, "key", 0, false).get("value"));
+        assertEquals(1, users.getRange(primary, "a", 10, true, null, 0).size());
+        assertEquals(1, users.getWrites());
+        assertEquals(2, orders.getWrites());
+        assertEquals(1, users.getScans());
+
+        assertTrue(store.clearTable("orders"));
+        assertTrue(store.getTable("orders").get(primary, "key", 0, false).isNull());
+        assertTrue(store.dropTable("users"));
+        assertFalse(store.dropTable("users"));
+        assertEquals(null, store.findTable("users"));
+        assertTrue(store.getTable("users").get(primary, "key", 0, false).isNull());
+
+        // requests without a table use the default table
+        assertTrue(store.getTable(null) == store.getTable(Store.DEFAULT_TABLE));
+    }
+
+    /**
+     * A rollback restores the tables of the checkpoint, including dropped and cleared ones.
+     */
+    @Test
+    public void testCheckpoint() throws Exception {
+        store.getTable("users").insert(primary, "key", version("key", 0, "user"));
+        store.getTable("orders").insert(primary, "key", version("key", 0, "order"));
+        store.checkpoint();
+
+        store.dropTable("users");
+        store.clearTable("orders");
+        store.getTable("created").insert(primary, "key", version("key", 0, "created"));
+
+        assertTrue(store.rollback());
+        assertEquals("user", store.getTable("users").get(primary, "key", 0, false).get("value"));
+        assertEquals("order", store.getTable("orders").get(primary, "key", 0, false).get("value"));
+        assertEquals(null, store.findTable("created"));
+
+        store.clear();
+        assertFalse(store.rollback());
+    }
+
+    /**
+     * A restored snapshot contains all tables with their keys, version chains and visibility.
+     */
+    @Test
+    public void testSnapshot() throws Exception {
+        Table table = store.getTable("usertable");
+        table.insert(primary, "key", version("key", 0, "first"));
+        table.update(primary, "key", version("key", 50, "second"));
+        StalenessMap visibility = new StalenessMap();
+        visibility.put(primary, 0l);
+        visibility.put(secondary, 100l);
+        table.insert(primary, "deleted", version("deleted", 0, "deleted"));
+        timeHandler.increaseTime(50);
+        table.delete(primary, "deleted", visibility, 50);
+        for (int i = 0; i < 1000; i++) {
+            table.insert(primary, "user" + i, version("user" + i, i, "" + i));
+        }
+        store.getTable("other").insert(primary, "key", version("key", 0, "other"));
+
+        Path file = folder.getRoot().toPath().resolve("store.snapshot");
+        store.writeSnapshot(file, Arrays.asList(primary, secondary));
+
+        // nodes are matched by name
+        Node restoredPrimary = new Node("primary");
+        Node restoredSecondary = new Node("secondary");
+        Node.assignOrdinals(Arrays.asList(restoredPrimary, restoredSecondary));
+        Store restoredStore = new Store(timeHandler);
+        assertEquals(1003, restoredStore.restoreSnapshot(file, Arrays.asList(restoredPrimary, restoredSecondary)));
+
+        Table restored = restoredStore.getTable("usertable");
+        assertEquals(2, restored.getVersionSet("key").size());
+        assertEquals("second", restored.get(restoredPrimary, "key", 50, false).get("value"));
+        assertEquals("first", restored.get(restoredSecondary, "key", 120, false).get("value"));
+        assertEquals("second", restored.get(restoredSecondary, "key", 150, false).get("value"));
+        assertTrue(restored.get(restoredPrimary, "deleted", 50, false).isNull());
+        assertEquals("deleted", restored.get(restoredSecondary, "deleted", 120, false).get("value"));
+        assertEquals(1000, restored.getRange(restoredPrimary, "user", 2000, true, null, 1000).size());
+        assertEquals("999", restored.get(restoredPrimary, "user999", 999, false).get("value"));
+        assertEquals("other", restoredStore.getTable("other").get(restoredPrimary, "key", 0, false).get("value"));
+    }
+
+    /**
+     * Storage engines are created from their configuration and serve all tables.
+     */
+    @Test
+    public void testStorageEngine() throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put("class", OffHeapStore.class.getName());
+        config.put("slabSize", 1024);
+        StorageEngine engine = (StorageEngine) InstanceFactory.newInstanceFromConfig(config);
+
+        engine.insert("users", primary, "key", version("key", 0, "user"));
+        engine.upsert(null, primary, "key", version("key", 0, "default"));
+        assertEquals("user", engine.get("users", primary, "key", null, 0, false).get("value"));
+        assertEquals("default", engine.get(Store.DEFAULT_TABLE, primary, "key", null, 0, false).get("value"));
+        assertEquals(1, engine.getRange("users", primary, "a", 10, true, null, 0, false).size());
+        assertNotNull(engine.get("users", primary, "key", null, 0, false).getOffHeapValues());
+
+        // reads do not create tables
+        assertTrue(engine.get("unknown", primary, "key", null, 0, false).isNull());
+        assertEquals(null, ((Store) engine).findTable("unknown"));
+    }
+
+    /**
+     * Versions that a bulk load skips, because their keys exist, take no off-heap space.
+     */
+    @Test
+    public void testOffHeapBulkLoad() throws Exception {
+        OffHeapStore offHeap = new OffHeapStore(timeHandler, new SlabAllocator(1024, null));
+        List<Version> versions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            versions.add(version("user" + i, 0, "" + i));
+        }
+        assertEquals(10, offHeap.bulkLoad("users", versions, true));
+        long allocated = offHeap.getSlabAllocator().getAllocatedBytes();
+
+        versions.clear();
+        for (int i = 0; i < 10; i++) {
+            versions.add(version("user" + i, 0, "again"));
+        }
+        assertEquals(0, offHeap.bulkLoad("users", versions, true));
+        assertEquals(allocated, offHeap.getSlabAllocator().getAllocatedBytes());
+    }
+
+    /**
+     * Slabs whose versions have mostly been pruned are compacted, so their space is
+     * released, and the versions that remain are still read correctly.
+     */
+    @Test
+    public void testOffHeapCompaction() throws Exception {
+        OffHeapStore offHeap = new OffHeapStore(timeHandler, new SlabAllocator(1024, null));
+        Table table = offHeap.getTable("users");
+        for (int i = 0; i < 500; i++) {
+            table.insert(primary, "user" + i, version("user" + i, 0, "" + i));
+        }
+        StalenessMap visibility = new StalenessMap();
+        visibility.put(primary, 0l);
+        visibility.put(secondary, 100l);
+        for (int i = 0; i < 500; i++) {
+            if (i % 10 != 0) {
+                table.delete(primary, "user" + i, visibility, 0);
+            }
+        }
+        long slabs = offHeap.getSlabAllocator().getSlabs();
+        long allocated = offHeap.getSlabAllocator().getAllocatedBytes();
+
+        timeHandler.increaseTime(200);
+        offHeap.prune();
+        assertTrue(offHeap.getSlabAllocator().getSlabs() < slabs / 2);
+        assertTrue(offHeap.getSlabAllocator().getAllocatedBytes() < allocated / 2);
+        for (int i = 0; i < 500; i++) {
+            Version version = table.get(secondary, "user" + i, timeHandler.getCurrentTime(), false);
+            if (i % 10 == 0) {
+                assertEquals("" + i, version.get("value"));
+            } else {
+                assertTrue(version.isNull());
+            }
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package de.unihamburg.sickstore.backend;
+
+import de.unihamburg.sickstore.backend.anomaly.staleness.StalenessMap;
+import de.unihamburg.sickstore.backend.timer.FakeTimeHandler;
+import de.unihamburg.sickstore.database.Node;
+import de.unihamburg.sickstore.database.messages.exception.InsertException;
+import de.unihamburg.sickstore.database.messages.exception.UpdateException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TableTest {
+
+    private FakeTimeHandler timeHandler;
+    private Table table;
+    private Node primary;
+    private Node secondary;
+
+    @Before
+    public void setUp() {
+        timeHandler = new FakeTimeHandler();
+        table = new Store(timeHandler).getTable("usertable");
+        primary = new Node("primary");
+        secondary = new Node("secondary");
+        Node.assignOrdinals(Arrays.asList(primary, secondary));
+    }
+
+    private Version version(String key, long writtenAt, String value) {
+        StalenessMap visibility = new StalenessMap();
+        visibility.put(primary, 0l);
+        visibility.put(secondary, 100l);
+
+        Version version = new Version(key, primary, writtenAt, visibility);
+        version.put("value", value);
+        return version;
+    }
+
+    /**
+     * Older versions remain visible for a node until the newer version
+     * has reached it.
+     */
+    @Test
+    public void testVisibility() throws Exception {
+        table.insert(primary, "key", version("key", 0, "first"));
+        table.update(primary, "key", version("key", 50, "second"));
+
+        assertEquals("second", table.get(primary, "key", 50, false).get("value"));
+        assertEquals("first", table.get(secondary, "key", 120, false).get("value"));
+        assertEquals("second", table.get(secondary, "key", 150, false).get("value"));
+        assertTrue(table.get(secondary, "key", 50, false).isNull());
+    }
+
+    /**
+     * Versions that no node can read anymore are dropped, so the version chain stays
+     * short under sustained updates and deleted keys are reclaimed.
+     */
+    @Test
+    public void testGarbageCollection() throws Exception {
+        table.insert(primary, "key", version("key", 0, "0"));
+        for (int i = 1; i <= 1000; i++) {
+            timeHandler.increaseTime(10);
+            table.update(primary, "key", version("key", timeHandler.getCurrentTime(), "" + i));
+        }
+        // versions of the last 100ms are not yet visible for the secondary
+        assertTrue(table.getVersionSet("key").size() <= 12);
+        assertEquals("1000", table.get(primary, "key", timeHandler.getCurrentTime(), false).get("value"));
+        assertEquals("990", table.get(secondary, "key", timeHandler.getCurrentTime(), false).get("value"));
+
+        StalenessMap visibility = new StalenessMap();
+        visibility.put(primary, 0l);
+        visibility.put(secondary, 100l);
+        table.delete(primary, "key", visibility, timeHandler.getCurrentTime());
+        assertEquals("990", table.get(secondary, "key", timeHandler.getCurrentTime(), false).get("value"));
+
+        timeHandler.increaseTime(100);
+        table.prune();
+        assertEquals(null, table.getVersionSet("key"));
+        assertTrue(table.get(secondary, "key", timeHandler.getCurrentTime(), false).isNull());
+
+        // the key can be used again after it has been reclaimed
+        table.insert(primary, "key", version("key", timeHandler.getCurrentTime(), "new"));
+        assertEquals("new", table.get(primary, "key", timeHandler.getCurrentTime(), false).get("value"));
+    }
+
+    /**
+     * Pruning keeps the versions that a read in progress may still return.
+     */
+    @Test
+    public void testPruneDuringRead() throws Exception {
+        table.insert(primary, "key", version("key", 0, "0"));
+        timeHandler.increaseTime(1000);
+        table.update(primary, "key", version("key", 1000, "1000"));
+        timeHandler.increaseTime(200);
+
+        table.inFlightReads.enter(500);
+        try {
+            table.prune();
+            assertEquals("0", table.get(secondary, "key", 500, false).get("value"));
+        } finally {
+            table.inFlightReads.exit();
+        }
+
+        table.prune();
+        assertEquals(1, table.getVersionSet("key").size());
+        assertEquals("1000", table.get(secondary, "key", timeHandler.getCurrentTime(), false).get("value"));
+    }
+
+    /**
+     * Threads that have read and terminated since do not keep their slots.
+     */
+    @Test
+    public void testInFlightReadsOfTerminatedThreads() throws Exception {
+        table.insert(primary, "key", version("key", 0, "0"));
+        int slots = table.inFlightReads.size();
+        Thread reader = new Thread(() -> table.get(primary, "key", 0, false));
+        reader.start();
+        reader.join();
+        assertEquals(slots + 1, table.inFlightReads.size());
+
+        table.prune();
+        assertEquals(slots, table.inFlightReads.size());
+    }
+
+    /**
+     * Scans start at the given key, skip deleted or invisible items and stop
+     * once enough items have been read.
+     */
+    @Test
+    public void testRange() throws Exception {
+        for (String key : new String[] {"a", "b", "c", "d", "e"}) {
+            table.insert(primary, key, version(key, 0, key));
+        }
+        StalenessMap visibility = new StalenessMap();
+        visibility.put(primary, 0l);
+        visibility.put(secondary, 100l);
+        timeHandler.increaseTime(200);
+        table.delete(primary, "c", visibility, 200);
+        table.insert(primary, "bb", version("bb", 200, "bb"));
+
+        List<Version> range = table.getRange(primary, "b", 3, true, null, 200);
+        assertEquals(3, range.size());
+        assertEquals("b", range.get(0).get("value"));
+        assertEquals("bb", range.get(1).get("value"));
+        assertEquals("d", range.get(2).get("value"));
+
+        // the secondary neither sees the delete nor the insert yet
+        range = table.getRange(secondary, "d", 10, false, null, 200);
+        assertEquals(4, range.size());
+        assertEquals("d", range.get(0).get("value"));
+        assertEquals("c", range.get(1).get("value"));
+        assertEquals("b", range.get(2).get("value"));
+        assertEquals("a", range.get(3).get("value"));
+    }
+
+    /**
+     * Many threads write to the store at once, none of the writes may get lost.
+     */
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        final int threads = 8;
+        final int keysPerThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < keysPerThread; i++) {
+                    String key = "user" + thread + "-" + i;
+                    table.insertOrUpdate(key, version(key, 0, key));
+                    // every thread also updates a shared key
+                    table.insertOrUpdate("shared", version("shared", i, key));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        List<Version> all = table.getRange(primary, "user", threads * keysPerThread + 1, true, null, 0);
+        assertEquals(threads * keysPerThread, all.size());
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < keysPerThread; i++) {
+                String key = "user" + t + "-" + i;
+                assertEquals(key, table.get(primary, key, 0, false).get("value"));
+            }
+        }
+        assertTrue(!table.get(primary, "shared", keysPerThread, false).isNull());
+    }
+
+    /**
+     * Keys that are deleted and reclaimed while other threads insert them again end up
+     * with the same chain in the point index and in the ordered index used by scans.
+     */
+    @Test
+    public void testConcurrentReclaims() throws Exception {
+        final int threads = 8;
+        final int keys = 10;
+        StalenessMap visibility = new StalenessMap();
+        visibility.put(primary, 0l);
+        visibility.put(secondary, 0l);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    String key = "key" + (i % keys);
+                    if ((i + thread) % 2 == 0) {
+                        Version version = version(key, 0, key);
+                        version.setVisibility(visibility);
+                        table.insertOrUpdate(key, version);
+                    } else {
+                        try {
+                            table.delete(primary, key, visibility, 0);
+                        } catch (Exception e) {
+                            // the key has just been deleted by another thread
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        List<Version> scanned = table.getRange(primary, "key", keys, true, null, 0);
+        int existing = 0;
+        for (int i = 0; i < keys; i++) {
+            Version version = table.get(primary, "key" + i, 0, false);
+            if (!version.isNull()) {
+                assertTrue(scanned.contains(version));
+                existing++;
+            }
+        }
+        assertEquals(existing, scanned.size());
+    }
+
+    /**
+     * Bulk loads skip existing keys unless asked to overwrite them.
+     */
+    @Test
+    public void testBulkLoad() throws Exception {
+        table.insert(primary, "b", version("b", 0, "existing"));
+
+        List<Version> versions = new ArrayList<>();
+        for (String key : new String[] {"c", "a", "b"}) {
+            versions.add(version(key, 0, key));
+        }
+        assertEquals(2, table.bulkLoad(versions, true));
+        assertEquals("a", table.get(primary, "a", 0, false).get("value"));
+        assertEquals("existing", table.get(primary, "b", 0, false).get("value"));
+        assertEquals(3, table.getRange(primary, "a", 10, true, null, 0).size());
+
+        versions.clear();
+        versions.add(version("b", 10, "overwritten"));
+        assertEquals(1, table.bulkLoad(versions, false));
+        assertEquals("overwritten", table.get(primary, "b", 10, false).get("value"));
+    }
+
+    /**
+     * Like inserts, bulk loads check for existence as seen by the writing node: a
+     * key that is not visible to that node yet does not exist for it.
+     */
+    @Test
+    public void testBulkLoadChecksVisibility() throws Exception {
+        table.insert(primary, "b", version("b", 0, "existing"));
+
+        StalenessMap visibility = new StalenessMap();
+        visibility.put(primary, 0l);
+        visibility.put(secondary, 0l);
+        Version loaded = new Version("b", secondary, 50, visibility);
+        loaded.put("value", "loaded");
+        assertEquals(1, table.bulkLoad(Collections.singletonList(loaded), true));
+        assertEquals("loaded", table.get(secondary, "b", 50, false).get("value"));
+
+        Version again = new Version("b", secondary, 150, visibility);
+        again.put("value", "again");
+        assertEquals(0, table.bulkLoad(Collections.singletonList(again), true));
+    }
+
+    /**
+     * Of many concurrent inserts of the same key exactly one succeeds, while upserts
+     * never fail.
+     */
+    @Test
+    public void testConditionalWrites() throws Exception {
+        final int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final AtomicInteger inserted = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    try {
+                        table.insert(primary, "key" + i, version("key" + i, 0, "" + thread));
+                        inserted.incrementAndGet();
+                    } catch (InsertException e) {
+                        // another thread was first
+                    }
+                    table.upsert(primary, "upserted" + i, version("upserted" + i, 0, "" + thread));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(1000, inserted.get());
+        assertEquals(1, table.getVersionSet("key0").size());
+        assertEquals(threads, table.getVersionSet("upserted0").size());
+
+        try {
+            table.update(primary, "missing", version("missing", 0, "value"));
+            fail("Update of a missing key was expected to fail but succeed");
+        } catch (UpdateException e) {
+        }
+        table.upsert(primary, "missing", version("missing", 0, "value"));
+        assertEquals("value", table.get(primary, "missing", 0, false).get("value"));
+    }
+
+    /**
+     * A rollback drops all writes since the checkpoint, while garbage collection and
+     * writes never change the checkpointed versions.
+     */
+    @Test
+    public void testCheckpoint() throws Exception {
+        for (String key : new String[] {"a", "b", "c"}) {
+            table.insert(primary, key, version(key, 0, key));
+        }
+        table.checkpoint();
+
+        table.insert(primary, "aa", version("aa", 0, "aa"));
+        table.delete(primary, "b", new StalenessMap(), 0);
+        for (int i = 1; i <= 100; i++) {
+            timeHandler.increaseTime(10);
+            table.update(primary, "c", version("c", timeHandler.getCurrentTime(), "c" + i));
+        }
+        table.prune();
+
+        long now = timeHandler.getCurrentTime();
+        List<Version> range = table.getRange(primary, "a", 10, true, null, now);
+        assertEquals(3, range.size());
+        assertEquals("aa", range.get(1).get("value"));
+        assertEquals("c100", range.get(2).get("value"));
+        assertTrue(table.get(primary, "b", now, false).isNull());
+        assertEquals(2, table.getRange(primary, "b", 10, false, null, now).size());
+
+        assertTrue(table.rollback());
+        range = table.getRange(primary, "c", 10, false, null, now);
+        assertEquals(3, range.size());
+        assertEquals("c", range.get(0).get("value"));
+        assertEquals("b", range.get(1).get("value"));
+        assertEquals("a", range.get(2).get("value"));
+        assertEquals(1, table.getVersionSet("c").size());
+
+        // a checkpoint can be reused by many runs
+        table.update(primary, "a", version("a", now, "updated"));
+        assertEquals("updated", table.get(primary, "a", now, false).get("value"));
+        assertTrue(table.rollback());
+        assertEquals("a", table.get(primary, "a", now, false).get("value"));
+    }
+}
@@ -2,15 +2,26 @@ package de.unihamburg.sickstore.backend;
 
 import static org.junit.Assert.assertNotEquals;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import de.unihamburg.sickstore.backend.anomaly.staleness.StalenessMap;
+import de.unihamburg.sickstore.backend.offheap.SlabAllocator;
 import de.unihamburg.sickstore.database.Node;
+import de.unihamburg.sickstore.kryo.KryoMessageRegistrar;
 import org.junit.Test;
 
 public class VersionTest {
@@ -19,9 +30,12 @@ public class VersionTest {
     public void testClone() throws CloneNotSupportedException {
 
         // Create visibility map
+        Node first = new Node("1");
+        Node second = new Node("2");
+        Node.assignOrdinals(Arrays.asList(first, second));
         StalenessMap visibility = new StalenessMap();
-        visibility.put(new Node("1"), 100l);
-        visibility.put(new Node("2"), 102l);
+        visibility.put(first, 100l);
+        visibility.put(second, 102l);
         // create a version object and set some values
         Version version = new Version();
         version.setVisibility(visibility);
@@ -45,4 +59,119 @@ public class VersionTest {
         System.out.println(clone);
     }
 
+    @Test
+    public void testProject() {
+        Version version = new Version();
+        version.put("name", "Bob");
+        version.put("age", "25");
+        version.freeze();
+
+        assertSame(version, version.project(null));
+
+        Set<String> columns = new HashSet<String>();
+        columns.add("name");
+        Version projection = version.project(columns);
+        assertNotSame(version, projection);
+        assertEquals(1, projection.getValues().size());
+        assertSame(version.get("name"), projection.get("name"));
+        assertNull(projection.get("age"));
+
+        try {
+            version.put("age", "26");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // stored versions are immutable
+        }
+    }
+
+    @Test
+    public void testOffHeap() {
+        Version version = new Version();
+        version.setKey("key");
+        version.put("name", "Bob");
+        version.put("age", 25);
+        version.freeze();
+
+        Kryo kryo = new Kryo();
+        KryoMessageRegistrar.register(kryo);
+        Output onHeap = new Output(1024, -1);
+        kryo.writeObject(onHeap, version);
+
+        SlabAllocator slabs = new SlabAllocator(64, null);
+        version.moveOffHeap(slabs);
+        assertNotNull(version.getOffHeapValues());
+        assertFalse(version.isNull());
+        assertEquals("Bob", version.get("name"));
+        assertEquals(25, version.get("age"));
+
+        Set<String> columns = new HashSet<String>();
+        columns.add("name");
+        assertEquals(1, version.project(columns).getValues().size());
+
+        // the encoded columns are copied as they are
+        Output offHeap = new Output(1024, -1);
+        kryo.writeObject(offHeap, version);
+        assertArrayEquals(onHeap.toBytes(), offHeap.toBytes());
+        Version read = kryo.readObject(new Input(offHeap.toBytes()), Version.class);
+        assertEquals(version, read);
+
+        // versions larger than a slab get a buffer of their own
+        Version large = new Version();
+        large.put("value", new String(new char[100]).replace('\0', 'x'));
+        large.freeze();
+        large.moveOffHeap(slabs);
+        assertEquals(100, ((String) large.get("value")).length());
+        assertEquals(2, slabs.getSlabs());
+    }
+
+    @Test
+    public void testEncoded() {
+        Kryo kryo = new Kryo();
+        KryoMessageRegistrar.register(kryo);
+        Version version = new Version();
+        version.setKey("key");
+        version.put("name", "Bob");
+        version.put("age", 25);
+        Output written = new Output(1024, -1);
+        kryo.writeObject(written, version);
+
+        // read versions keep their columns encoded, even when stored
+        Version read = kryo.readObject(new Input(written.toBytes()), Version.class);
+        read.freeze();
+        assertNotNull(read.getEncodedValues());
+        assertFalse(read.isNull());
+        assertEquals("Bob", read.get("name"));
+        assertNotNull(read.getEncodedValues());
+        Output passedOn = new Output(1024, -1);
+        kryo.writeObject(passedOn, read);
+        assertArrayEquals(written.toBytes(), passedOn.toBytes());
+
+        // a read decodes the columns once, but still passes them on encoded
+        Version view = read.project(null);
+        assertNotSame(read, view);
+        assertSame(view.getValues(), view.getValues());
+        assertEquals(25, view.get("age"));
+        Output viewed = new Output(1024, -1);
+        kryo.writeObject(viewed, view);
+        assertArrayEquals(written.toBytes(), viewed.toBytes());
+
+        // only projections are decoded
+        Set<String> columns = new HashSet<String>();
+        columns.add("age");
+        Version projection = read.project(columns);
+        assertNull(projection.getEncodedValues());
+        assertEquals(1, projection.getValues().size());
+        assertEquals(25, projection.get("age"));
+
+        // versions that can still change are decoded once
+        Version changed = kryo.readObject(new Input(written.toBytes()), Version.class);
+        changed.put("age", 26);
+        assertNull(changed.getEncodedValues());
+        assertEquals("Bob", changed.get("name"));
+        assertEquals(26, changed.get("age"));
+
+        Output empty = new Output(1024, -1);
+        kryo.writeObject(empty, new Version());
+        assertTrue(kryo.readObject(new Input(empty.toBytes()), Version.class).isNull());
+    }
 }
@@ -215,6 +215,7 @@ public class MongoDbAnomaliesTest {
         nodes.add(node2);
         nodes.add(node3);
         nodes.add(node4);
+        Node.assignOrdinals(nodes);
 
         // create custom delays
         Set<NetworkDelay> customDelays = new HashSet<>();
@@ -2,9 +2,19 @@ package de.unihamburg.sickstore.database;
 
 import static org.junit.Assert.assertNotEquals;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 
 import de.unihamburg.sickstore.SickstoreTestCase;
 import de.unihamburg.sickstore.database.client.SickStoreConnectionPool;
@@ -42,7 +52,8 @@ public class SickClientTest extends SickstoreTestCase {
         int tcpPort = 54999;
 
         // Create and start server and clients
-        server = new SickStoreServer(tcpPort, queryHandler);
+        // use short frames, so that scan results are split into several of them
+        server = new SickStoreServer(tcpPort, queryHandler, 64);
         server.start();
 
         c1 = new SickStoreConnectionPool(host, tcpPort, "node1", timeHandler);
@@ -204,4 +215,90 @@ public class SickClientTest extends SickstoreTestCase {
         assertEquals(1, copies.get(2).getValues().size());
         assertEquals(3, copies.size());
     }
+
+    @Test
+    public void testAsyncAPI() throws Exception {
+        Version bob = new Version();
+        bob.put("name", "bob");
+        bob.put("age", 25);
+        assertTrue(c1.insertAsync("", "bob", bob).get());
+        assertEquals(bob, c1.readAsync("", "bob", null).get());
+
+        Version alice = new Version();
+        alice.put("name", "alice");
+        alice.put("age", 23);
+        CompletableFuture<Boolean> insert = c1.insertAsync("", "alice", alice);
+        CompletableFuture<Boolean> update = c1.updateAsync("", "bob", alice);
+        assertTrue(insert.get() && update.get());
+
+        List<Version> copies = c1.scanAsync("", "alice", 2, null).get();
+        assertEquals(2, copies.size());
+        assertEquals(alice, copies.get(0));
+        assertEquals(alice, copies.get(1));
+
+        assertTrue(c1.deleteAsync("", "alice").get());
+        try {
+            c1.deleteAsync("", "alice").get();
+            fail("Duplicate delete was expected to fail but succeed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DeleteException);
+        }
+    }
+
+    /**
+     * A column value that cannot be serialized.
+     */
+    @DefaultSerializer(Unwritable.Failing.class)
+    private static class Unwritable {
+        static class Failing extends Serializer<Unwritable> {
+            @Override
+            public void write(Kryo kryo, Output output, Unwritable object) {
+                throw new IllegalStateException("unwritable");
+            }
+
+            @Override
+            public Unwritable read(Kryo kryo, Input input, Class<Unwritable> type) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * A request that cannot be sent fails at once instead of waiting for a response,
+     * and the connection stays usable.
+     */
+    @Test
+    public void testWriteFailure() throws Exception {
+        Version broken = new Version();
+        broken.put("value", new Unwritable());
+        try {
+            c1.insertAsync("", "broken", broken).get(10, TimeUnit.SECONDS);
+            fail("Unwritable insert was expected to fail but succeed");
+        } catch (ExecutionException e) {
+            // expected
+        }
+
+        Version bob = new Version();
+        bob.put("name", "bob");
+        assertTrue(c1.insertAsync("", "bob", bob).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBulkLoad() throws Exception {
+        List<Version> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Version version = new Version();
+            version.setKey(String.format("user%04d", i));
+            version.put("field", i);
+            records.add(version);
+        }
+        assertEquals(1000, c1.bulkLoad("", records.iterator(), 64, 4, false, true));
+        // existing records are skipped
+        assertEquals(0, c1.bulkLoad("", records.subList(0, 10).iterator(), 64, 4, false, true));
+
+        assertEquals(500, c1.read("", "user0500", null).get("field"));
+        List<Version> copies = c1.scan("", "user0998", 10, null);
+        assertEquals(2, copies.size());
+        assertEquals(999, copies.get(1).get("field"));
+    }
 }
@@ -0,0 +1,70 @@
+package de.unihamburg.sickstore.database;
+
+import de.unihamburg.sickstore.database.messages.ClientRequestDelete;
+import de.unihamburg.sickstore.database.messages.ServerResponse;
+import de.unihamburg.sickstore.database.messages.ServerResponseDelete;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SickStoreServerHandlerTest {
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    /**
+     * With server-side delays, the response is only sent once the simulated latency has elapsed.
+     */
+    @Test
+    public void testDelayedResponse() throws Exception {
+        assertDelayed(System.currentTimeMillis());
+    }
+
+    /**
+     * The latency is measured by the server clock, so neither a skewed nor an
+     * unset client timestamp lets the response go out early.
+     */
+    @Test
+    public void testDelayedResponseIgnoresClientClock() throws Exception {
+        assertDelayed(System.currentTimeMillis() - 60000);
+        assertDelayed(-1);
+    }
+
+    private void assertDelayed(long sentByClientAt) throws Exception {
+        SickStoreServerHandler handler = new SickStoreServerHandler(request -> {
+            ServerResponse response = new ServerResponseDelete(request.getId());
+            response.setSentByClientAt(sentByClientAt);
+            response.setWaitTimeout(200l);
+            return response;
+        }, SickStoreServerHandler.DEFAULT_SCAN_FRAME_LENGTH, timer);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        channel.writeInbound(new ClientRequestDelete("", "key"));
+        assertNull(channel.readOutbound());
+
+        long waitUntil = System.currentTimeMillis() + 5000;
+        Object response;
+        while ((response = channel.readOutbound()) == null && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertNotNull(response);
+        assertTrue(((ServerResponse) response).isDelayedByServer());
+    }
+}
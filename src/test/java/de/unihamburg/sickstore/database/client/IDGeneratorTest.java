@@ -0,0 +1,96 @@
+package de.unihamburg.sickstore.database.client;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IDGeneratorTest {
+
+    /**
+     * All ids below the capacity are handed out exactly once, then the generator is exhausted
+     * until an id is released.
+     */
+    @Test
+    public void testCapacity() {
+        IDGenerator generator = IDGenerator.newInstance(100);
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            int id = generator.next();
+            assertTrue(id >= 0 && id < 100);
+            assertTrue(ids.add(id));
+        }
+        assertEquals(-1, generator.next());
+
+        assertTrue(generator.release(42));
+        assertEquals(42, generator.next());
+        assertEquals(-1, generator.next());
+    }
+
+    /**
+     * Releasing an id that is not in use does not put it on the stack twice.
+     */
+    @Test
+    public void testDoubleRelease() {
+        IDGenerator generator = IDGenerator.newInstance(2);
+        int id = generator.next();
+        assertTrue(generator.release(id));
+        assertFalse(generator.release(id));
+
+        Set<Integer> ids = new HashSet<>();
+        assertTrue(ids.add(generator.next()));
+        assertTrue(ids.add(generator.next()));
+        assertEquals(-1, generator.next());
+    }
+
+    /**
+     * Concurrent allocations never hand out an id that is still in use.
+     */
+    @Test
+    public void testConcurrentAllocation() throws Exception {
+        final int threads = 8;
+        final IDGenerator generator = IDGenerator.newInstance(threads * 4);
+        final boolean[] inUse = new boolean[generator.capacity()];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    int id = generator.next();
+                    assertTrue(id >= 0);
+                    synchronized (inUse) {
+                        assertTrue(!inUse[id]);
+                        inUse[id] = true;
+                    }
+                    Thread.yield();
+                    synchronized (inUse) {
+                        inUse[id] = false;
+                    }
+                    generator.release(id);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < generator.capacity(); i++) {
+            assertTrue(ids.add(generator.next()));
+        }
+        assertEquals(-1, generator.next());
+    }
+}
@@ -1,10 +1,27 @@
 package de.unihamburg.sickstore.kryo;
 
 import com.esotericsoftware.kryo.Kryo;
+import de.unihamburg.sickstore.backend.Version;
+import de.unihamburg.sickstore.database.WriteConcern;
 import de.unihamburg.sickstore.database.messages.ClientRequestCleanup;
+import de.unihamburg.sickstore.database.messages.ClientRequestDelete;
+import de.unihamburg.sickstore.database.messages.ClientRequestInsert;
+import de.unihamburg.sickstore.database.messages.ClientRequestMultiWrite;
+import de.unihamburg.sickstore.database.messages.ClientRequestWrite;
+import de.unihamburg.sickstore.database.messages.ServerResponse;
+import de.unihamburg.sickstore.database.messages.ServerResponseException;
+import de.unihamburg.sickstore.database.messages.ServerResponseMultiRead;
+import de.unihamburg.sickstore.database.messages.ServerResponseRead;
+import de.unihamburg.sickstore.database.messages.ServerResponseScan;
+import de.unihamburg.sickstore.database.messages.exception.DeleteException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.embedded.EmbeddedChannel;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class KryoTest {
@@ -26,4 +43,136 @@ public class KryoTest {
         assertEquals( cleanup.getExportFolder(), "export/folder");
     }
 
+    @Test
+    public void testDecodeConsecutiveFrames() {
+        Kryo kryo = new Kryo();
+        kryo.register(ClientRequestCleanup.class);
+
+        EmbeddedChannel encoder = new EmbeddedChannel(new KryoEncoder(kryo));
+        encoder.writeOutbound(new ClientRequestCleanup("first"));
+        encoder.writeOutbound(new ClientRequestCleanup("second"));
+
+        // both frames arrive within a single buffer
+        ByteBuf frames = Unpooled.buffer();
+        frames.writeBytes((ByteBuf) encoder.readOutbound());
+        frames.writeBytes((ByteBuf) encoder.readOutbound());
+
+        EmbeddedChannel decoder = new EmbeddedChannel(new KryoDecoder(kryo));
+        decoder.writeInbound(frames);
+
+        assertEquals("first", ((ClientRequestCleanup) decoder.readInbound()).getExportFolder());
+        assertEquals("second", ((ClientRequestCleanup) decoder.readInbound()).getExportFolder());
+        assertNull(decoder.readInbound());
+    }
+
+    @Test
+    public void testLargeFrame() {
+        Kryo kryo = new Kryo();
+        kryo.register(ClientRequestCleanup.class);
+
+        StringBuilder folder = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            folder.append((char) ('a' + i % 26));
+        }
+
+        EmbeddedChannel ch = new EmbeddedChannel(new KryoEncoder(kryo), new KryoDecoder(kryo));
+        ch.writeOutbound(new ClientRequestCleanup(folder.toString()));
+        ch.writeInbound(ch.readOutbound());
+
+        ClientRequestCleanup cleanup = (ClientRequestCleanup) ch.readInbound();
+        assertEquals(folder.toString(), cleanup.getExportFolder());
+    }
+
+    @Test
+    public void testMessageSerializers() {
+        Kryo kryo = new Kryo();
+        KryoMessageRegistrar.register(kryo);
+        EmbeddedChannel ch = new EmbeddedChannel(new KryoEncoder(kryo), new KryoDecoder(kryo));
+
+        Version bob = new Version();
+        bob.put("name", "bob");
+        bob.put("age", 25);
+        ClientRequestInsert insert = new ClientRequestInsert("users", "bob", bob,
+                new WriteConcern(2, true, 100), "primary");
+        insert.setId(7);
+
+        ch.writeOutbound(insert);
+        ch.writeInbound(ch.readOutbound());
+        ClientRequestInsert decodedInsert = (ClientRequestInsert) ch.readInbound();
+        assertEquals(7, decodedInsert.getId());
+        assertEquals("users", decodedInsert.getTable());
+        assertEquals("bob", decodedInsert.getKey());
+        assertEquals("primary", decodedInsert.getDestinationNode());
+        assertEquals(insert.getSendedByClientAt(), decodedInsert.getSendedByClientAt());
+        assertEquals(2, decodedInsert.getWriteConcern().getReplicaAcknowledgement());
+        assertTrue(decodedInsert.getWriteConcern().isJournaling());
+        assertEquals(100, decodedInsert.getWriteConcern().getTimeout());
+        assertEquals(bob, decodedInsert.getVersion());
+
+        List<Version> entries = new ArrayList<>();
+        entries.add(bob);
+        entries.add(new Version("mike", null, -1, null, true));
+        ServerResponseScan scan = new ServerResponseScan(7, entries);
+        scan.setWaitTimeout(42l);
+        scan.setMore(true);
+
+        ch.writeOutbound(scan);
+        ch.writeInbound(ch.readOutbound());
+        ServerResponseScan decodedScan = (ServerResponseScan) ch.readInbound();
+        assertEquals(7, decodedScan.getStreamId());
+        assertEquals(scan.getResponseId(), decodedScan.getResponseId());
+        assertEquals((Long) 42l, decodedScan.getWaitTimeout());
+        assertTrue(decodedScan.hasMore());
+        assertEquals(2, decodedScan.getEntries().size());
+        assertEquals(25, decodedScan.getEntries().get(0).get("age"));
+        assertTrue(decodedScan.getEntries().get(1).isNull());
+    }
+
+    @Test
+    public void testMultiMessages() {
+        Kryo kryo = new Kryo();
+        KryoMessageRegistrar.register(kryo);
+        EmbeddedChannel ch = new EmbeddedChannel(new KryoEncoder(kryo), new KryoDecoder(kryo));
+
+        Version bob = new Version();
+        bob.put("name", "bob");
+        List<ClientRequestWrite> writes = new ArrayList<>();
+        writes.add(new ClientRequestInsert("users", "bob", bob, new WriteConcern(2), "primary"));
+        writes.add(new ClientRequestDelete("users", "mike", new WriteConcern(), "primary"));
+        ClientRequestMultiWrite multiWrite = new ClientRequestMultiWrite(writes, "primary");
+        multiWrite.setId(3);
+
+        ch.writeOutbound(multiWrite);
+        ch.writeInbound(ch.readOutbound());
+        ClientRequestMultiWrite decodedWrite = (ClientRequestMultiWrite) ch.readInbound();
+        assertEquals(3, decodedWrite.getId());
+        assertEquals(2, decodedWrite.getRequests().size());
+        ClientRequestInsert decodedInsert = (ClientRequestInsert) decodedWrite.getRequests().get(0);
+        assertEquals("users", decodedInsert.getTable());
+        assertEquals("bob", decodedInsert.getKey());
+        assertEquals("primary", decodedInsert.getDestinationNode());
+        assertEquals(multiWrite.getSendedByClientAt(), decodedInsert.getSendedByClientAt());
+        assertEquals(2, decodedInsert.getWriteConcern().getReplicaAcknowledgement());
+        assertEquals(bob, decodedInsert.getVersion());
+        assertEquals("mike", decodedWrite.getRequests().get(1).getKey());
+        assertTrue(decodedWrite.getRequests().get(1) instanceof ClientRequestDelete);
+
+        List<ServerResponse> responses = new ArrayList<>();
+        ServerResponseRead read = new ServerResponseRead(0, bob);
+        read.setWaitTimeout(10l);
+        responses.add(read);
+        responses.add(new ServerResponseException(1, new DeleteException("no value")));
+        ServerResponseMultiRead multiRead = new ServerResponseMultiRead(3, responses);
+        multiRead.setWaitTimeout(10l);
+
+        ch.writeOutbound(multiRead);
+        ch.writeInbound(ch.readOutbound());
+        ServerResponseMultiRead decodedRead = (ServerResponseMultiRead) ch.readInbound();
+        assertEquals(3, decodedRead.getStreamId());
+        assertEquals(2, decodedRead.getResponses().size());
+        assertEquals((Long) 10l, decodedRead.getResponses().get(0).getWaitTimeout());
+        assertEquals(bob, ((ServerResponseRead) decodedRead.getResponses().get(0)).getVersion());
+        assertTrue(((ServerResponseException) decodedRead.getResponses().get(1)).getException()
+                instanceof DeleteException);
+    }
 }